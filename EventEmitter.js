@@ -0,0 +1,22 @@
+'use strict';
+
+import {DeviceEventEmitter} from 'react-native';
+
+/**
+ * The name of the event with which the native side delivers a batch of
+ * events. Must be kept in sync with EventDispatcher.BATCH_EVENT_NAME on
+ * Android.
+ */
+const BATCH_EVENT_NAME = 'webRTCModuleEventBatch';
+
+// The native side may coalesce multiple events into a single batch in order
+// to reduce the traffic over the React Native bridge. Unpack every batch, in
+// order, into the original events so that listeners need not be aware of the
+// batching.
+DeviceEventEmitter.addListener(BATCH_EVENT_NAME, batch => {
+  for (const {name, data} of batch) {
+    DeviceEventEmitter.emit(name, data);
+  }
+});
+
+export default DeviceEventEmitter;
@@ -1,9 +1,11 @@
 'use strict';
 
-import {NativeModules} from 'react-native';
+import {NativeModules, Platform} from 'react-native';
 import EventTarget from 'event-target-shim';
 
 import getUserMedia from './getUserMedia';
+import permissions from './Permissions';
+import * as RTCUtil from './RTCUtil';
 
 const {WebRTCModule} = NativeModules;
 
@@ -34,6 +36,33 @@ class MediaDevices extends EventTarget(MEDIA_DEVICES_EVENTS) {
     getUserMedia(constraints) {
         return getUserMedia(constraints);
     }
+
+    /**
+     * Private / custom API which opens the camera and starts capturing ahead
+     * of a getUserMedia call with the same video constraints (e.g. when the
+     * user is about to join a call) which then takes the capture over
+     * instead of starting it from scratch. The capture is stopped if it is
+     * not taken over within a short time (10 seconds by default). The
+     * outcome is reported by the mediaDevicesPrewarm event. Android only.
+     *
+     * @param {*} constraints
+     * @returns {Promise}
+     */
+    _prewarm(constraints) {
+        if (Platform.OS !== 'android'
+                || typeof constraints !== 'object'
+                || !constraints.video) {
+            return Promise.resolve();
+        }
+
+        // Normalize constraints the same way getUserMedia does so that they
+        // match.
+        constraints = RTCUtil.normalizeConstraints({ video: constraints.video });
+
+        return permissions.request({ name: 'camera' }).then(granted => {
+            granted && WebRTCModule.mediaDevicesPrewarm(constraints);
+        });
+    }
 }
 
 export default new MediaDevices();
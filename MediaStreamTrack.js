@@ -1,8 +1,11 @@
 'use strict';
 
-import {NativeModules} from 'react-native';
+import {NativeModules, Platform} from 'react-native';
 import EventTarget from 'event-target-shim';
+import uuid from 'uuid';
+import EventEmitter from './EventEmitter';
 import MediaStreamErrorEvent from './MediaStreamErrorEvent';
+import * as RTCUtil from './RTCUtil';
 
 import type MediaStreamError from './MediaStreamError';
 
@@ -16,6 +19,20 @@ const MEDIA_STREAM_TRACK_EVENTS = [
   'overconstrained',
 ];
 
+/**
+ * The local video tracks with settings (i.e. on Android) by ID. The native
+ * side updates the settings of a track when it retunes the camera capture the
+ * track shares with another one (e.g. the clones of a track whose constraints
+ * are applied).
+ */
+const localVideoTracks: Map<string, MediaStreamTrack> = new Map();
+
+EventEmitter.addListener('mediaStreamTrackSettingsChanged', ev => {
+  const track = localVideoTracks.get(ev.id);
+
+  track && (track._settings = ev.settings);
+});
+
 type MediaStreamTrackState = "live" | "ended";
 
 type SourceInfo = {
@@ -41,6 +58,9 @@ class MediaStreamTrack extends EventTarget(MEDIA_STREAM_TRACK_EVENTS) {
   onunmute: ?Function;
   overconstrained: ?Function;
 
+  _frameStatsSubscription: ?Object = null;
+  _settings: ?Object;
+
   constructor(info) {
     super();
 
@@ -52,8 +72,13 @@ class MediaStreamTrack extends EventTarget(MEDIA_STREAM_TRACK_EVENTS) {
     this.muted = false;
     this.readonly = true; // how to decide?
     this.remote = info.remote;
+    this._settings = info.settings;
     this.readyState = (_readyState === "initializing"
                     || _readyState === "live") ? "live" : "ended";
+
+    if (this._settings && !this.remote && this.kind === 'video') {
+      localVideoTracks.set(this.id, this);
+    }
   }
 
   get enabled(): boolean {
@@ -81,23 +106,179 @@ class MediaStreamTrack extends EventTarget(MEDIA_STREAM_TRACK_EVENTS) {
    *
    * This is how the reference application (AppRTCMobile) implements camera
    * switching.
+   *
+   * On Android, the camera to switch to may be specified by deviceId (as
+   * reported by enumerateDevices()) or facingMode ('user' or 'environment')
+   * and is switched to directly (defaulting to the opposite facing). The
+   * returned promise resolves with the settings of the track along with the
+   * latency of the switch (latencyMs) i.e. the time to the first frame from
+   * the new camera.
    */
-  _switchCamera() {
+  _switchCamera(target: ?{ deviceId?: string, facingMode?: string }): Promise<?Object> {
     if (this.remote) {
       throw new Error('Not implemented for remote tracks');
     }
     if (this.kind !== 'video') {
       throw new Error('Only implemented for video tracks');
     }
-    WebRTCModule.mediaStreamTrackSwitchCamera(this.id);
+    if (Platform.OS !== 'android') {
+      WebRTCModule.mediaStreamTrackSwitchCamera(this.id);
+      return Promise.resolve(null);
+    }
+    return new Promise((resolve, reject) => {
+      WebRTCModule.mediaStreamTrackSwitchCamera(
+        this.id,
+        target || {},
+        (success, data) => {
+          if (success) {
+            const { latencyMs, ...settings } = data;
+
+            this._settings = settings;
+            resolve(data);
+          } else {
+            reject(new Error(data));
+          }
+        });
+    });
   }
 
-  applyConstraints() {
-    throw new Error('Not implemented.');
+  /**
+   * Private / custom API which gets the receive-side frame telemetry of a
+   * remote video track: frame rate, inter-frame interval and jitter, freezes,
+   * resolution / rotation (and their changes) and the type of the buffers.
+   */
+  _getFrameStats(): Promise<Object> {
+    if (!this.remote || this.kind !== 'video') {
+      return Promise.reject(new Error('Only implemented for remote video tracks'));
+    }
+    return new Promise((resolve, reject) => {
+      WebRTCModule.mediaStreamTrackGetFrameStats(this.id, (success, data) => {
+        if (success) {
+          resolve(data);
+        } else {
+          reject(new Error(data));
+        }
+      });
+    });
   }
 
-  clone() {
-    throw new Error('Not implemented.');
+  /**
+   * Private / custom API which delivers the frame telemetry (see
+   * _getFrameStats()) of a remote video track to a specific listener every
+   * intervalMs milliseconds. Replaces a previous subscription.
+   */
+  _subscribeFrameStats(intervalMs: number, listener: Function) {
+    if (!this.remote || this.kind !== 'video') {
+      throw new Error('Only implemented for remote video tracks');
+    }
+    this._unsubscribeFrameStats();
+
+    this._frameStatsSubscription
+      = EventEmitter.addListener('mediaStreamTrackFrameStats', ev => {
+        for (const stats of ev.stats) {
+          if (stats.trackId === this.id) {
+            listener(stats);
+          }
+        }
+      });
+    WebRTCModule.mediaStreamTrackSetFrameStatsInterval(this.id, intervalMs);
+  }
+
+  /**
+   * Private / custom API which stops the delivery of the frame telemetry
+   * started by _subscribeFrameStats().
+   */
+  _unsubscribeFrameStats() {
+    if (this._frameStatsSubscription) {
+      this._frameStatsSubscription.remove();
+      this._frameStatsSubscription = null;
+      WebRTCModule.mediaStreamTrackSetFrameStatsInterval(this.id, 0);
+    }
+  }
+
+  /**
+   * Applies width, height and frame rate constraints to a local video track
+   * without restarting the camera if the current capture can be downscaled
+   * to them. Android only.
+   */
+  applyConstraints(constraints: Object = {}): Promise<void> {
+    if (Platform.OS !== 'android') {
+      return Promise.reject(new Error('Not implemented.'));
+    }
+    if (this.remote || this.kind !== 'video') {
+      return Promise.reject(new Error('Only implemented for local video tracks'));
+    }
+    return new Promise((resolve, reject) => {
+      WebRTCModule.mediaStreamTrackApplyConstraints(
+        this.id,
+        RTCUtil.normalizeVideoTrackConstraints(constraints),
+        (success, data) => {
+          if (success) {
+            this._settings = data;
+            resolve();
+          } else {
+            reject(new Error(data));
+          }
+        });
+    });
+  }
+
+  clone(): MediaStreamTrack {
+    return this._cloneWithCallback({}, () => {});
+  }
+
+  /**
+   * Private / custom API which clones a local video track with width, height
+   * and/or frame rate constraints of its own (e.g. a thumbnail for a local
+   * preview next to the full resolution for the peers). The clone shares
+   * the camera with this track and receives its frames downscaled. Android
+   * only.
+   */
+  _clone(constraints: Object): Promise<MediaStreamTrack> {
+    return new Promise((resolve, reject) => {
+      const clone = this._cloneWithCallback(constraints, (success, data) => {
+        if (success) {
+          resolve(clone);
+        } else {
+          reject(new Error(data));
+        }
+      });
+    });
+  }
+
+  _cloneWithCallback(constraints: Object, callback: Function): MediaStreamTrack {
+    if (Platform.OS !== 'android') {
+      throw new Error('Not implemented.');
+    }
+    if (this.remote || this.kind !== 'video') {
+      throw new Error('Only implemented for local video tracks');
+    }
+
+    const id = uuid.v4();
+    const clone = new MediaStreamTrack({
+      enabled: this._enabled,
+      id,
+      kind: this.kind,
+      label: id,
+      readyState: this.readyState,
+      remote: false,
+      settings: this._settings
+    });
+
+    WebRTCModule.mediaStreamTrackClone(
+      this.id,
+      id,
+      RTCUtil.normalizeVideoTrackConstraints(constraints),
+      (success, data) => {
+        if (success) {
+          clone._settings = data;
+        } else {
+          clone.readyState = 'ended';
+        }
+        callback(success, data);
+      });
+
+    return clone;
   }
 
   getCapabilities() {
@@ -109,10 +290,15 @@ class MediaStreamTrack extends EventTarget(MEDIA_STREAM_TRACK_EVENTS) {
   }
 
   getSettings() {
-    throw new Error('Not implemented.');
+    // The settings are known for local video tracks on Android only.
+    if (!this._settings) {
+      throw new Error('Not implemented.');
+    }
+    return { ...this._settings };
   }
 
   release() {
+    localVideoTracks.delete(this.id);
     WebRTCModule.mediaStreamTrackRelease(this.id);
   }
 }
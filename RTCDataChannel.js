@@ -1,10 +1,12 @@
 'use strict';
 
-import {NativeModules, DeviceEventEmitter} from 'react-native';
+import {NativeModules} from 'react-native';
 import base64 from 'base64-js';
 import EventTarget from 'event-target-shim';
+import EventEmitter from './EventEmitter';
 import MessageEvent from './MessageEvent';
 import RTCDataChannelEvent from './RTCDataChannelEvent';
+import RTCEvent from './RTCEvent';
 
 const {WebRTCModule} = NativeModules;
 
@@ -35,10 +37,47 @@ const DATA_CHANNEL_EVENTS = [
 
 class ResourceInUse extends Error {}
 
+/**
+ * Computes the number of bytes the UTF-8 encoding of a specific string takes.
+ * Lone surrogates count as one byte because the native side replaces them with
+ * a single '?'.
+ */
+function utf8ByteLength(str: string): number {
+  let length = 0;
+  for (let i = 0; i < str.length; i++) {
+    const c = str.charCodeAt(i);
+    if (c < 0x80) {
+      length += 1;
+    } else if (c < 0x800) {
+      length += 2;
+    } else if (c >= 0xd800 && c <= 0xdbff) {
+      const next = str.charCodeAt(i + 1);
+      if (next >= 0xdc00 && next <= 0xdfff) {
+        length += 4;
+        i++;
+      } else {
+        length += 1;
+      }
+    } else if (c >= 0xdc00 && c <= 0xdfff) {
+      length += 1;
+    } else {
+      length += 3;
+    }
+  }
+  return length;
+}
+
 export default class RTCDataChannel extends EventTarget(DATA_CHANNEL_EVENTS) {
 
   _peerConnectionId: number;
 
+  // The total number of bytes passed to the native side for sending and
+  // whether the native side reports the amount it has buffered. The native
+  // reports lag behind the messages in flight across the bridge, which are
+  // accounted for by comparing _sentBytes with the native count.
+  _sentBytes: number = 0;
+  _bufferedAmountReported: boolean = false;
+
   binaryType: 'arraybuffer' = 'arraybuffer'; // we only support 'arraybuffer'
   bufferedAmount: number = 0;
   bufferedAmountLowThreshold: number = 0;
@@ -85,9 +124,81 @@ export default class RTCDataChannel extends EventTarget(DATA_CHANNEL_EVENTS) {
   }
 
   send(data: string | ArrayBuffer | ArrayBufferView) {
+    const message = this._toNativeMessage(data);
+    this._willSend(message);
+    WebRTCModule.dataChannelSend(this._peerConnectionId, this.id, message.data, message.type);
+  }
+
+  /**
+   * Private / custom API for sending a burst of messages in a single pass
+   * through the native side. A message which fails to be sent does not abort
+   * the sending of the remaining messages.
+   *
+   * @param {Array} messages - the messages to send, each of the types
+   * accepted by send()
+   * @return {Promise} resolved with an array of booleans which tells, for each
+   * message in order, whether it was sent
+   */
+  _sendBatch(messages: Array<string | ArrayBuffer | ArrayBufferView>) {
+    // A message which cannot be converted is reported as not sent rather
+    // than preventing the sending of the rest.
+    const results = messages.map(() => false);
+    const indices = [];
+    const nativeMessages = [];
+
+    messages.forEach((data, i) => {
+      let message;
+      try {
+        message = this._toNativeMessage(data);
+      } catch (e) {
+        return;
+      }
+      indices.push(i);
+      nativeMessages.push(message);
+    });
+
+    if (nativeMessages.length === 0) {
+      return Promise.resolve(results);
+    }
+    nativeMessages.forEach(message => this._willSend(message));
+
+    if (typeof WebRTCModule.dataChannelSendBatch !== 'function') {
+      // The native side does not support the bulk operation, fall back to
+      // sending the messages one by one. It does not tell whether a message
+      // has been sent so only the messages which have been handed to an open
+      // channel are reported as sent.
+      const open = this.readyState === 'open';
+      nativeMessages.forEach((message, i) => {
+        WebRTCModule.dataChannelSend(this._peerConnectionId, this.id, message.data, message.type);
+        results[indices[i]] = open;
+      });
+      return Promise.resolve(results);
+    }
+
+    return new Promise(resolve => {
+      WebRTCModule.dataChannelSendBatch(
+        this._peerConnectionId,
+        this.id,
+        nativeMessages,
+        sent => {
+          sent.forEach((s, i) => {
+            results[indices[i]] = s;
+          });
+          resolve(results);
+        });
+    });
+  }
+
+  _willSend(message: {data: string, type: string, byteLength: number}) {
+    this._sentBytes += message.byteLength;
+    if (this._bufferedAmountReported) {
+      this.bufferedAmount += message.byteLength;
+    }
+  }
+
+  _toNativeMessage(data: string | ArrayBuffer | ArrayBufferView) {
     if (typeof data === 'string') {
-      WebRTCModule.dataChannelSend(this._peerConnectionId, this.id, data, 'text');
-      return;
+      return {data, type: 'text', byteLength: utf8ByteLength(data)};
     }
 
     // Safely convert the buffer object to an Uint8Array for base64-encoding
@@ -98,7 +209,11 @@ export default class RTCDataChannel extends EventTarget(DATA_CHANNEL_EVENTS) {
     } else {
       throw new TypeError('Data must be either string, ArrayBuffer, or ArrayBufferView');
     }
-    WebRTCModule.dataChannelSend(this._peerConnectionId, this.id, base64.fromByteArray(data), 'binary');
+    return {
+      data: base64.fromByteArray(data),
+      type: 'binary',
+      byteLength: data.byteLength,
+    };
   }
 
   close() {
@@ -116,7 +231,7 @@ export default class RTCDataChannel extends EventTarget(DATA_CHANNEL_EVENTS) {
 
   _registerEvents() {
     this._subscriptions = [
-      DeviceEventEmitter.addListener('dataChannelStateChanged', ev => {
+      EventEmitter.addListener('dataChannelStateChanged', ev => {
         if (ev.peerConnectionId !== this._peerConnectionId
             || ev.id !== this.id) {
           return;
@@ -129,7 +244,7 @@ export default class RTCDataChannel extends EventTarget(DATA_CHANNEL_EVENTS) {
           this._unregisterEvents();
         }
       }),
-      DeviceEventEmitter.addListener('dataChannelReceiveMessage', ev => {
+      EventEmitter.addListener('dataChannelReceiveMessage', ev => {
         if (ev.peerConnectionId !== this._peerConnectionId
             || ev.id !== this.id) {
           return;
@@ -140,6 +255,31 @@ export default class RTCDataChannel extends EventTarget(DATA_CHANNEL_EVENTS) {
         }
         this.dispatchEvent(new MessageEvent('message', {data}));
       }),
+      EventEmitter.addListener('dataChannelSendFailed', ev => {
+        if (ev.peerConnectionId !== this._peerConnectionId
+            || ev.id !== this.id) {
+          return;
+        }
+        // send() has returned already so the rejection of the message (e.g.
+        // by a full native send queue) cannot be thrown from it.
+        const error = new Error('Failed to send a message');
+        error.name = 'OperationError';
+        this.dispatchEvent(new RTCEvent('error', {error}));
+      }),
+      EventEmitter.addListener('dataChannelDidChangeBufferedAmount', ev => {
+        if (ev.peerConnectionId !== this._peerConnectionId
+            || ev.id !== this.id) {
+          return;
+        }
+        const previous = this.bufferedAmount;
+        this._bufferedAmountReported = true;
+        this.bufferedAmount
+          = Math.max(0, ev.bufferedAmount + this._sentBytes - ev.sentBytes);
+        if (previous > this.bufferedAmountLowThreshold
+            && this.bufferedAmount <= this.bufferedAmountLowThreshold) {
+          this.dispatchEvent(new RTCDataChannelEvent('bufferedamountlow', {channel: this}));
+        }
+      }),
     ];
   }
 
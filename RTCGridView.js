@@ -0,0 +1,51 @@
+'use strict';
+
+import {
+  Platform,
+  requireNativeComponent,
+} from 'react-native';
+import PropTypes from 'prop-types';
+
+const RTCGridView = {
+  name: 'RTCGridView',
+  propTypes: {
+
+    /**
+     * The tiles to render into the single surface of this view, later tiles
+     * over earlier ones. Each tile renders the first video track of the
+     * MediaStream specified by its streamURL. The rectangle of a tile (x, y,
+     * width, height) is specified in fractions of the size of this view.
+     * objectFit and mirror have the same meaning as the respective properties
+     * of RTCView.
+     *
+     * This view costs a single render thread and a single EGL surface
+     * regardless of the number of tiles and is thus preferable to multiple
+     * RTCViews for large grids of participants.
+     */
+    tiles: PropTypes.arrayOf(PropTypes.shape({
+      streamURL: PropTypes.string,
+      x: PropTypes.number,
+      y: PropTypes.number,
+      width: PropTypes.number,
+      height: PropTypes.number,
+      objectFit: PropTypes.oneOf(['contain', 'cover']),
+      mirror: PropTypes.bool,
+    })),
+  },
+};
+
+// Implemented on Android only at the time of this writing.
+const View = Platform.OS === 'android'
+  ? requireNativeComponent('RTCGridView', RTCGridView, {nativeOnly: {
+      testID: true,
+      accessibilityComponentType: true,
+      renderToHardwareTextureAndroid: true,
+      accessibilityLabel: true,
+      accessibilityLiveRegion: true,
+      importantForAccessibility: true,
+      onLayout: true,
+      nativeID: true,
+    }})
+  : null;
+
+export default View;
@@ -1,8 +1,9 @@
 'use strict';
 
 import EventTarget from 'event-target-shim';
-import {DeviceEventEmitter, NativeModules} from 'react-native';
+import {NativeModules} from 'react-native';
 
+import EventEmitter from './EventEmitter';
 import MediaStream from './MediaStream';
 import MediaStreamEvent from './MediaStreamEvent';
 import MediaStreamTrack from './MediaStreamTrack';
@@ -87,6 +88,7 @@ export default class RTCPeerConnection extends EventTarget(PEER_CONNECTION_EVENT
   _localStreams: Array<MediaStream> = [];
   _remoteStreams: Array<MediaStream> = [];
   _subscriptions: Array<any>;
+  _statsSubscription: ?Object = null;
 
   /**
    * The RTCDataChannel.id allocator of this RTCPeerConnection.
@@ -200,6 +202,39 @@ export default class RTCPeerConnection extends EventTarget(PEER_CONNECTION_EVENT
     });
   }
 
+  /**
+   * Private / custom API for adding multiple remote ICE candidates (e.g. a
+   * whole signaling payload) at once, in a single pass through the native
+   * side.
+   *
+   * @param {Array} candidates - the ICE candidates to add
+   * @return {Promise} resolved with an array of booleans which tells, for each
+   * candidate in order, whether it was added
+   */
+  _addIceCandidates(candidates: Array<RTCIceCandidate>) {
+    const candidatesJSON
+      = candidates.map(c => c.toJSON ? c.toJSON() : c);
+
+    if (typeof WebRTCModule.peerConnectionAddICECandidates !== 'function') {
+      // The native side does not support the bulk operation, fall back to
+      // adding the candidates one by one.
+      return Promise.all(candidatesJSON.map(c =>
+        new Promise(resolve => {
+          WebRTCModule.peerConnectionAddICECandidate(
+            c,
+            this._peerConnectionId,
+            successful => resolve(Boolean(successful)));
+        })));
+    }
+
+    return new Promise(resolve => {
+      WebRTCModule.peerConnectionAddICECandidates(
+        candidatesJSON,
+        this._peerConnectionId,
+        results => resolve(results));
+    });
+  }
+
   getStats(track) {
     // NOTE: This returns a Promise but the format of the results is still
     // the "legacy" one. The native side (in Oobj-C) doesn't yet support the
@@ -230,6 +265,85 @@ export default class RTCPeerConnection extends EventTarget(PEER_CONNECTION_EVENT
     });
   }
 
+  /**
+   * Private / custom API for getting the stats in the format of the WebRTC
+   * Statistics API, with numeric values as numbers, rather than in the legacy
+   * format of getStats().
+   *
+   * @param {MediaStreamTrack} track - optional; if specified, only the stats
+   * of the sender or the receiver of the track are reported
+   * @return {Promise} resolved with a Map of stats objects keyed by their ids
+   */
+  _getStatsReport(track) {
+    return new Promise((resolve, reject) => {
+      WebRTCModule.peerConnectionGetStatsReport(
+        (track && track.id) || '',
+        this._peerConnectionId,
+        (success, data) => {
+          if (success) {
+            try {
+              const stats = JSON.parse(data);
+              resolve(new Map(stats.map(s => [s.id, s])));
+            } catch (e) {
+              reject(e);
+            }
+          } else {
+            reject(new Error(data));
+          }
+        });
+    });
+  }
+
+  /**
+   * Private / custom API for receiving the stats periodically, sampled on the
+   * native side, instead of polling getStats(). The native side only sends
+   * what has changed since the previous sample; the changes are applied to the
+   * report passed to the listener. Stats objects of RTP streams and the like
+   * carry a <tt>rates</tt> object with the rates derived from their counters
+   * (e.g. bitrateSent, packetsLostPerSecond, framesDecodedPerSecond).
+   *
+   * @param {Object} options - <tt>intervalMs</tt> (1000 by default) and,
+   * optionally, <tt>types</tt> i.e. the array of the types of the stats to
+   * sample
+   * @param {Function} listener - invoked with the up-to-date report (a Map of
+   * stats objects keyed by their ids) and the delta which updated it
+   */
+  _subscribeStats(options: Object, listener: Function) {
+    this._unsubscribeStats();
+
+    const report = new Map();
+    const subscription = EventEmitter.addListener('peerConnectionStatsSampled', ev => {
+      for (const sample of ev.samples) {
+        if (sample.id !== this._peerConnectionId) {
+          continue;
+        }
+        const delta = JSON.parse(sample.data);
+        for (const stats of delta.stats) {
+          report.set(stats.id, Object.assign(report.get(stats.id) || {}, stats));
+        }
+        for (const id of delta.removed) {
+          report.delete(id);
+        }
+        listener(report, delta);
+      }
+    });
+
+    this._statsSubscription = subscription;
+    WebRTCModule.peerConnectionSubscribeStats(this._peerConnectionId, options || {});
+  }
+
+  /**
+   * Private / custom API which stops the delivery of the stats started by
+   * _subscribeStats().
+   */
+  _unsubscribeStats() {
+    if (this._statsSubscription) {
+      this._statsSubscription.remove();
+      this._statsSubscription = null;
+      WebRTCModule.peerConnectionUnsubscribeStats(this._peerConnectionId);
+    }
+  }
+
   getLocalStreams() {
     return this._localStreams.slice();
   }
@@ -239,6 +353,10 @@ export default class RTCPeerConnection extends EventTarget(PEER_CONNECTION_EVENT
   }
 
   close() {
+    if (this._statsSubscription) {
+      this._statsSubscription.remove();
+      this._statsSubscription = null;
+    }
     WebRTCModule.peerConnectionClose(this._peerConnectionId);
   }
 
@@ -257,13 +375,13 @@ export default class RTCPeerConnection extends EventTarget(PEER_CONNECTION_EVENT
 
   _registerEvents(): void {
     this._subscriptions = [
-      DeviceEventEmitter.addListener('peerConnectionOnRenegotiationNeeded', ev => {
+      EventEmitter.addListener('peerConnectionOnRenegotiationNeeded', ev => {
         if (ev.id !== this._peerConnectionId) {
           return;
         }
         this.dispatchEvent(new RTCEvent('negotiationneeded'));
       }),
-      DeviceEventEmitter.addListener('peerConnectionIceConnectionChanged', ev => {
+      EventEmitter.addListener('peerConnectionIceConnectionChanged', ev => {
         if (ev.id !== this._peerConnectionId) {
           return;
         }
@@ -274,14 +392,14 @@ export default class RTCPeerConnection extends EventTarget(PEER_CONNECTION_EVENT
           this._unregisterEvents();
         }
       }),
-      DeviceEventEmitter.addListener('peerConnectionSignalingStateChanged', ev => {
+      EventEmitter.addListener('peerConnectionSignalingStateChanged', ev => {
         if (ev.id !== this._peerConnectionId) {
           return;
         }
         this.signalingState = ev.signalingState;
         this.dispatchEvent(new RTCEvent('signalingstatechange'));
       }),
-      DeviceEventEmitter.addListener('peerConnectionAddedStream', ev => {
+      EventEmitter.addListener('peerConnectionAddedStream', ev => {
         if (ev.id !== this._peerConnectionId) {
           return;
         }
@@ -289,7 +407,7 @@ export default class RTCPeerConnection extends EventTarget(PEER_CONNECTION_EVENT
         this._remoteStreams.push(stream);
         this.dispatchEvent(new MediaStreamEvent('addstream', {stream}));
       }),
-      DeviceEventEmitter.addListener('peerConnectionRemovedStream', ev => {
+      EventEmitter.addListener('peerConnectionRemovedStream', ev => {
         if (ev.id !== this._peerConnectionId) {
           return;
         }
@@ -302,7 +420,7 @@ export default class RTCPeerConnection extends EventTarget(PEER_CONNECTION_EVENT
         }
         this.dispatchEvent(new MediaStreamEvent('removestream', {stream}));
       }),
-      DeviceEventEmitter.addListener('mediaStreamTrackMuteChanged', ev => {
+      EventEmitter.addListener('mediaStreamTrackMuteChanged', ev => {
         if (ev.peerConnectionId !== this._peerConnectionId) {
           return;
         }
@@ -313,7 +431,7 @@ export default class RTCPeerConnection extends EventTarget(PEER_CONNECTION_EVENT
           track.dispatchEvent(new MediaStreamTrackEvent(eventName, {track}));
         }
       }),
-      DeviceEventEmitter.addListener('peerConnectionGotICECandidate', ev => {
+      EventEmitter.addListener('peerConnectionGotICECandidate', ev => {
         if (ev.id !== this._peerConnectionId) {
           return;
         }
@@ -321,7 +439,17 @@ export default class RTCPeerConnection extends EventTarget(PEER_CONNECTION_EVENT
         const event = new RTCIceCandidateEvent('icecandidate', {candidate});
         this.dispatchEvent(event);
       }),
-      DeviceEventEmitter.addListener('peerConnectionIceGatheringChanged', ev => {
+      EventEmitter.addListener('peerConnectionGotICECandidates', ev => {
+        if (ev.id !== this._peerConnectionId) {
+          return;
+        }
+        for (const c of ev.candidates) {
+          const candidate = new RTCIceCandidate(c);
+          const event = new RTCIceCandidateEvent('icecandidate', {candidate});
+          this.dispatchEvent(event);
+        }
+      }),
+      EventEmitter.addListener('peerConnectionIceGatheringChanged', ev => {
         if (ev.id !== this._peerConnectionId) {
           return;
         }
@@ -333,7 +461,7 @@ export default class RTCPeerConnection extends EventTarget(PEER_CONNECTION_EVENT
 
         this.dispatchEvent(new RTCEvent('icegatheringstatechange'));
       }),
-      DeviceEventEmitter.addListener('peerConnectionDidOpenDataChannel', ev => {
+      EventEmitter.addListener('peerConnectionDidOpenDataChannel', ev => {
         if (ev.id !== this._peerConnectionId) {
           return;
         }
@@ -59,6 +59,42 @@ function extractNumber(constraints, prop) {
     }
 }
 
+/**
+ * Extracts the bounds of a numeric constraint: an exact value bounds it from
+ * both sides.
+ */
+function extractRange(constraints, prop) {
+    const value = constraints[prop];
+    const range = {};
+
+    if (typeof value === 'object') {
+        if (value.exact) {
+            range.min = range.max = Number.parseInt(value.exact);
+        } else {
+            value.min && (range.min = Number.parseInt(value.min));
+            value.max && (range.max = Number.parseInt(value.max));
+        }
+    }
+
+    return range;
+}
+
+/**
+ * Adds the bounds of the width, height and frame rate constraints to
+ * normalized video constraints as minWidth, maxWidth, etc.
+ */
+function addVideoRanges(c, constraints) {
+    for (const [ prop, suffix ] of [
+            [ 'frameRate', 'FrameRate' ],
+            [ 'height', 'Height' ],
+            [ 'width', 'Width' ] ]) {
+        const { min, max } = extractRange(constraints, prop);
+
+        min && (c[`min${suffix}`] = min);
+        max && (c[`max${suffix}`] = max);
+    }
+}
+
 function normalizeMediaConstraints(constraints, mediaType) {
     switch(mediaType) {
     case 'audio':
@@ -85,6 +121,11 @@ function normalizeMediaConstraints(constraints, mediaType) {
             };
         }
 
+        if (!constraints.mandatory) {
+            // The bounds are used (on Android) to select the capture format.
+            addVideoRanges(c, constraints);
+        }
+
         if (!c.deviceId) {
             delete c.deviceId;
         }
@@ -153,6 +194,24 @@ export function normalizeOfferAnswerOptions(options = {}) {
     return newOptions;
 }
 
+/**
+ * Normalize the width, height and frame rate constraints of an existing
+ * local video track (e.g. of its clone). Unlike normalizeConstraints(), no
+ * defaults are filled in: the missing constraints are left to the track.
+ */
+export function normalizeVideoTrackConstraints(constraints = {}) {
+    const c = {};
+
+    for (const prop of [ 'frameRate', 'height', 'width' ]) {
+        const value = extractNumber(constraints, prop);
+
+        value && (c[prop] = value);
+    }
+    addVideoRanges(c, constraints);
+
+    return c;
+}
+
 /**
  * Normalize the given constraints in something we can work with.
  */
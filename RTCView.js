@@ -28,6 +28,25 @@ const RTCView = {
      */
     objectFit: PropTypes.oneOf(['contain', 'cover']),
 
+    /**
+     * The maximum number of frames per second to render. The frames above it
+     * are dropped before they are drawn. Useful for thumbnails which do not
+     * need the full frame rate of the video. Zero or unspecified means no
+     * limit. Android only at the time of this writing.
+     */
+    maxFrameRate: PropTypes.number,
+
+    /**
+     * The maximum size (in pixels) of the frames to render. Larger frames are
+     * downscaled, preserving their aspect ratio, before they are drawn so
+     * that small views do not upload and draw full resolution frames. Android
+     * only at the time of this writing.
+     */
+    maxRenderSize: PropTypes.shape({
+      width: PropTypes.number,
+      height: PropTypes.number,
+    }),
+
     streamURL: PropTypes.string,
 
     /**
@@ -0,0 +1,306 @@
+package com.oney.WebRTCModule;
+
+import android.Manifest;
+import android.annotation.TargetApi;
+import android.content.Context;
+import android.content.pm.PackageManager;
+import android.hardware.camera2.CameraManager;
+import android.os.Build;
+import android.os.Handler;
+import android.os.Looper;
+import android.support.annotation.NonNull;
+import android.support.annotation.Nullable;
+import android.support.v4.content.ContextCompat;
+import android.util.Log;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+import org.webrtc.Camera2Enumerator;
+import org.webrtc.CameraEnumerationAndroid.CaptureFormat;
+import org.webrtc.CameraEnumerator;
+
+/**
+ * Caches what a {@link CameraEnumerator} reports about the cameras of the
+ * device (i.e. names, facing, supported {@link CaptureFormat}s) because each
+ * query (e.g. a Camera2 {@code CameraCharacteristics} lookup) is an IPC and
+ * capturer creation and device enumeration used to repeat them all.
+ * <p>
+ * The cache is filled once, asynchronously on the global executor, and
+ * refilled when the set of cameras changes (which is only detectable with
+ * the Camera2 API). A single load runs at a time and concurrent callers wait
+ * for it. The snapshots it returns may be used on any thread.
+ * <p>
+ * The Camera 1 API only tells the formats of a camera by opening it (and
+ * {@code Camera1Enumerator} remembers the result, failures included, for the
+ * lifetime of the process) so they are not loaded along with the cameras but
+ * on first use once the camera permission has been granted.
+ */
+class CameraInfoCache {
+    private static final String TAG = WebRTCModule.TAG;
+
+    private final CameraEnumerator cameraEnumerator;
+
+    private final Context context;
+
+    /**
+     * Held while the cameras are being loaded so that a single load runs at
+     * a time. Not held by {@link #invalidate()} which is called on the main
+     * thread.
+     */
+    private final Object loadLock = new Object();
+
+    /**
+     * The cached cameras or {@code null} if they are to be (re)loaded.
+     * Guarded by {@code this}.
+     */
+    private List<CameraInfo> cameras;
+
+    /**
+     * Incremented by {@link #invalidate()} so that a load which started
+     * before the invalidation does not store its (outdated) result. Guarded
+     * by {@code this}.
+     */
+    private int generation;
+
+    CameraInfoCache(Context context, CameraEnumerator cameraEnumerator) {
+        this.cameraEnumerator = cameraEnumerator;
+        this.context = context;
+
+        // Device names are camera IDs only with the Camera2 API.
+        if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.LOLLIPOP
+                && cameraEnumerator instanceof Camera2Enumerator) {
+            registerAvailabilityCallback(context);
+        }
+
+        ThreadUtils.runOnExecutor(this::getCameras);
+    }
+
+    CameraEnumerator getCameraEnumerator() {
+        return cameraEnumerator;
+    }
+
+    /**
+     * Gets the cameras of the device, loading them on the calling thread if
+     * the cache has not been filled yet (or has been invalidated) or waiting
+     * for a load which is in progress on another thread.
+     */
+    @NonNull
+    List<CameraInfo> getCameras() {
+        synchronized (this) {
+            if (cameras != null) {
+                return cameras;
+            }
+        }
+
+        synchronized (loadLock) {
+            int generation;
+
+            synchronized (this) {
+                // Loaded while this thread was waiting for loadLock.
+                if (cameras != null) {
+                    return cameras;
+                }
+                generation = this.generation;
+            }
+
+            // Do not hold the lock of this instance while loading: the
+            // queries are slow and invalidate() is called on the main thread.
+            List<CameraInfo> cameras = load();
+
+            synchronized (this) {
+                if (generation == this.generation) {
+                    this.cameras = cameras;
+                }
+            }
+            return cameras;
+        }
+    }
+
+    /**
+     * Gets a camera by name.
+     *
+     * @return the camera or {@code null} if there is no camera with the
+     * specified name
+     */
+    @Nullable
+    CameraInfo getCamera(String name) {
+        for (CameraInfo camera : getCameras()) {
+            if (camera.name.equals(name)) {
+                return camera;
+            }
+        }
+        return null;
+    }
+
+    /**
+     * Gets the formats (i.e. sizes and fps ranges) supported by a specific
+     * camera, loading them on the calling thread on first use with the
+     * Camera 1 API.
+     *
+     * @return the formats or an empty list if they could not be determined
+     * (yet)
+     */
+    @NonNull
+    List<CaptureFormat> getFormats(CameraInfo camera) {
+        synchronized (camera) {
+            if (camera.formats == null) {
+                if (!hasCameraPermission()) {
+                    // The camera cannot be opened so Camera1Enumerator would
+                    // remember that it supports no formats.
+                    return Collections.emptyList();
+                }
+                camera.setFormats(loadFormats(camera.name));
+            }
+            return camera.formats;
+        }
+    }
+
+    private boolean hasCameraPermission() {
+        return ContextCompat.checkSelfPermission(
+                context,
+                Manifest.permission.CAMERA)
+            == PackageManager.PERMISSION_GRANTED;
+    }
+
+    /**
+     * Discards the cached cameras and starts reloading them asynchronously.
+     */
+    void invalidate() {
+        synchronized (this) {
+            cameras = null;
+            generation++;
+        }
+        Log.d(TAG, "CameraInfoCache invalidated");
+        ThreadUtils.runOnExecutor(this::getCameras);
+    }
+
+    private List<CameraInfo> load() {
+        long startTime = System.nanoTime();
+        String[] names = cameraEnumerator.getDeviceNames();
+        List<CameraInfo> cameras = new ArrayList<>(names.length);
+        // The Camera2 API reports the formats without opening the cameras.
+        boolean loadFormats = cameraEnumerator instanceof Camera2Enumerator;
+
+        for (String name : names) {
+            Boolean frontFacing;
+
+            try {
+                // This can throw an exception when using the Camera 1 API.
+                frontFacing = cameraEnumerator.isFrontFacing(name);
+            } catch (Exception e) {
+                Log.e(
+                    TAG,
+                    "Failed to check the facing mode of camera " + name,
+                    e);
+                frontFacing = null;
+            }
+
+            CameraInfo camera = new CameraInfo(name, frontFacing);
+            if (loadFormats) {
+                camera.setFormats(loadFormats(name));
+            }
+            cameras.add(camera);
+        }
+
+        Log.d(TAG, "CameraInfoCache loaded " + cameras.size()
+            + " cameras in "
+            + (System.nanoTime() - startTime) / 1000000 + " ms");
+
+        return Collections.unmodifiableList(cameras);
+    }
+
+    @Nullable
+    private List<CaptureFormat> loadFormats(String name) {
+        try {
+            return cameraEnumerator.getSupportedFormats(name);
+        } catch (Exception e) {
+            Log.e(
+                TAG,
+                "Failed to get the supported formats of camera " + name,
+                e);
+            return null;
+        }
+    }
+
+    @TargetApi(Build.VERSION_CODES.LOLLIPOP)
+    private void registerAvailabilityCallback(Context context) {
+        CameraManager cameraManager
+            = (CameraManager) context.getSystemService(Context.CAMERA_SERVICE);
+
+        if (cameraManager == null) {
+            return;
+        }
+
+        // A camera becomes unavailable whenever it is opened (by any
+        // application, including this one) and available again when it is
+        // closed, so only a camera which is not cached tells that the set of
+        // cameras has changed (e.g. an external camera has been connected).
+        // A camera which has been disconnected is merely reported as
+        // unavailable and fails at capturer creation which falls back to the
+        // other cameras anyway.
+        cameraManager.registerAvailabilityCallback(
+            new CameraManager.AvailabilityCallback() {
+                @Override
+                public void onCameraAvailable(@NonNull String cameraId) {
+                    List<CameraInfo> cameras;
+
+                    synchronized (CameraInfoCache.this) {
+                        cameras = CameraInfoCache.this.cameras;
+                    }
+                    // Cameras are reported when the callback is registered
+                    // too; the initial load sees them anyway.
+                    if (cameras == null) {
+                        return;
+                    }
+                    for (CameraInfo camera : cameras) {
+                        if (camera.name.equals(cameraId)) {
+                            return;
+                        }
+                    }
+                    invalidate();
+                }
+            },
+            new Handler(Looper.getMainLooper()));
+    }
+
+    /**
+     * What is known about a camera of the device.
+     */
+    static class CameraInfo {
+        /**
+         * The device name of the camera as reported by the
+         * {@link CameraEnumerator}.
+         */
+        final String name;
+
+        /**
+         * Whether the camera is front facing or {@code null} if its facing
+         * could not be determined.
+         */
+        @Nullable
+        final Boolean frontFacing;
+
+        /**
+         * The formats (i.e. sizes and fps ranges) supported by the camera,
+         * empty if they could not be determined or {@code null} if they have
+         * not been loaded yet. Guarded by {@code this}; use
+         * {@link CameraInfoCache#getFormats(CameraInfo)}.
+         */
+        private List<CaptureFormat> formats;
+
+        CameraInfo(String name, @Nullable Boolean frontFacing) {
+            this.name = name;
+            this.frontFacing = frontFacing;
+        }
+
+        synchronized void setFormats(@Nullable List<CaptureFormat> formats) {
+            this.formats
+                = formats == null
+                    ? Collections.<CaptureFormat>emptyList()
+                    : Collections.unmodifiableList(
+                        new ArrayList<>(formats));
+        }
+    }
+}
@@ -0,0 +1,120 @@
+package com.oney.WebRTCModule;
+
+import java.nio.ByteBuffer;
+import java.nio.CharBuffer;
+import java.nio.charset.Charset;
+import java.nio.charset.CharsetDecoder;
+import java.nio.charset.CodingErrorAction;
+
+import android.util.Base64;
+
+/**
+ * Converts the messages received over a DataChannel into the strings which
+ * are sent to JavaScript: text messages are decoded as UTF-8 and binary ones
+ * are Base64-encoded. Reuses its scratch buffers across messages so that the
+ * only allocation per message is the resulting <tt>String</tt>.
+ * <p>
+ * Instances are not thread-safe. Messages are delivered serially for a given
+ * DataChannel so each {@link DataChannelObserver} has its own.
+ */
+final class DataChannelMessageConverter {
+    private static final Charset UTF_8 = Charset.forName("UTF-8");
+
+    /**
+     * The maximum size (in bytes or chars) of the scratch buffers which are
+     * retained between messages. Larger messages use transient buffers so
+     * that an occasional large message does not pin memory for the lifetime
+     * of the DataChannel.
+     */
+    static final int MAX_RETAINED_SCRATCH_SIZE = 64 * 1024;
+
+    /**
+     * The UTF-8 decoder of text messages. Malformed input is replaced like
+     * {@link String#String(byte[], Charset)} does.
+     */
+    private final CharsetDecoder utf8Decoder
+        = UTF_8.newDecoder()
+            .onMalformedInput(CodingErrorAction.REPLACE)
+            .onUnmappableCharacter(CodingErrorAction.REPLACE);
+
+    /**
+     * The scratch buffers reused across messages by {@link #copyToScratch}
+     * and {@link #decodeText}, respectively.
+     */
+    private byte[] byteScratch;
+    private CharBuffer charScratch;
+
+    /**
+     * Base64-encodes the remaining bytes (i.e. from the position to the
+     * limit) of a specific <tt>ByteBuffer</tt> without modifying it. A direct
+     * <tt>ByteBuffer</tt> is copied into a reused scratch array rather than a
+     * new one.
+     */
+    String encodeBinary(ByteBuffer data) {
+        final int length = data.remaining();
+
+        if (data.hasArray()) {
+            return Base64.encodeToString(
+                data.array(),
+                data.arrayOffset() + data.position(),
+                length,
+                Base64.NO_WRAP);
+        }
+        return Base64.encodeToString(
+            copyToScratch(data),
+            0,
+            length,
+            Base64.NO_WRAP);
+    }
+
+    /**
+     * Copies the remaining bytes (i.e. from the position to the limit) of a
+     * specific <tt>ByteBuffer</tt> without modifying it to the start of a
+     * reused scratch array (or of a new one if they do not fit into the
+     * retained size).
+     *
+     * @return the array which holds the copied bytes at its start. It may be
+     * longer than the copied bytes.
+     */
+    byte[] copyToScratch(ByteBuffer data) {
+        final int length = data.remaining();
+        byte[] bytes = byteScratch;
+
+        if (bytes == null || bytes.length < length) {
+            bytes = new byte[length];
+            if (length <= MAX_RETAINED_SCRATCH_SIZE) {
+                byteScratch = bytes;
+            }
+        }
+        data.duplicate().get(bytes, 0, length);
+        return bytes;
+    }
+
+    /**
+     * Decodes the remaining bytes (i.e. from the position to the limit) of a
+     * specific <tt>ByteBuffer</tt> as UTF-8 without modifying it. Reads
+     * straight from the (direct) <tt>ByteBuffer</tt> into a reused scratch
+     * <tt>CharBuffer</tt> so that the only allocation is the resulting
+     * <tt>String</tt>.
+     */
+    String decodeText(ByteBuffer data) {
+        final int length = data.remaining();
+        // UTF-8 never decodes into more chars than there are bytes.
+        CharBuffer chars = charScratch;
+        if (chars == null || chars.capacity() < length) {
+            chars = CharBuffer.allocate(length);
+            if (length <= MAX_RETAINED_SCRATCH_SIZE) {
+                charScratch = chars;
+            }
+        } else {
+            chars.clear();
+        }
+
+        utf8Decoder.reset();
+        utf8Decoder.decode(data.duplicate(), chars, /* endOfInput */ true);
+        utf8Decoder.flush(chars);
+        chars.flip();
+
+        return chars.toString();
+    }
+}
@@ -1,9 +1,10 @@
 package com.oney.WebRTCModule;
 
-import java.nio.charset.Charset;
+import java.util.ArrayDeque;
+import java.util.concurrent.atomic.AtomicBoolean;
 
 import android.support.annotation.Nullable;
-import android.util.Base64;
+import android.util.Log;
 
 import com.facebook.react.bridge.Arguments;
 import com.facebook.react.bridge.WritableMap;
@@ -11,12 +12,87 @@ import com.facebook.react.bridge.WritableMap;
 import org.webrtc.DataChannel;
 
 class DataChannelObserver implements DataChannel.Observer {
+    private final static String TAG = WebRTCModule.TAG;
 
     private final int mId;
     private final DataChannel mDataChannel;
     private final int peerConnectionId;
     private final WebRTCModule webRTCModule;
 
+    /**
+     * Converts the received messages into the strings sent to JavaScript.
+     */
+    private final DataChannelMessageConverter messageConverter
+        = new DataChannelMessageConverter();
+
+    /**
+     * The number of bytes buffered by the SCTP transport above which messages
+     * are queued in {@link #sendQueue} rather than handed to
+     * {@link #mDataChannel}.
+     */
+    private final long highWatermark;
+
+    /**
+     * The number of bytes buffered by the SCTP transport below which
+     * {@link #sendQueue} is drained.
+     */
+    private final long lowWatermark;
+
+    /**
+     * The maximum number of bytes in {@link #sendQueue}. Zero means no limit.
+     */
+    private final long maxQueuedBytes;
+
+    /**
+     * The messages which have been sent by JavaScript but are waiting for the
+     * SCTP transport to drain below {@link #lowWatermark}. Accessed on the
+     * executor lane of the PeerConnection only.
+     */
+    private final ArrayDeque<DataChannel.Buffer> sendQueue = new ArrayDeque<>();
+
+    /**
+     * The number of bytes in {@link #sendQueue}. Written on the executor lane
+     * of the PeerConnection only.
+     */
+    private volatile long queuedBytes;
+
+    /**
+     * The number of bytes buffered by the SCTP transport as last seen.
+     */
+    private volatile long sctpBufferedAmount;
+
+    /**
+     * The total number of bytes JavaScript has asked to send, whether sent or
+     * not. Reported along with the buffered amount so that JavaScript can
+     * account for the messages which were in flight across the bridge.
+     */
+    private volatile long sentBytes;
+
+    /**
+     * Whether JavaScript has closed the DataChannel. {@link #mDataChannel} is
+     * closed once {@link #sendQueue} has been drained so that the messages
+     * which have been accepted by {@link #send} are not lost. Accessed on the
+     * executor lane of the PeerConnection only.
+     */
+    private boolean closeRequested;
+
+    /**
+     * Whether the PeerConnection (and thus {@link #mDataChannel}) has been
+     * disposed of. Accessed on the executor lane of the PeerConnection only.
+     */
+    private boolean released;
+
+    /**
+     * Whether a drain of {@link #sendQueue} has been scheduled.
+     */
+    private final AtomicBoolean drainScheduled = new AtomicBoolean();
+
+    /**
+     * Whether a <tt>dataChannelDidChangeBufferedAmount</tt> event is waiting
+     * to be delivered. Changes in the meantime are coalesced into it.
+     */
+    private final AtomicBoolean bufferedAmountEventPending = new AtomicBoolean();
+
     DataChannelObserver(
             WebRTCModule webRTCModule,
             int peerConnectionId,
@@ -26,6 +102,173 @@ class DataChannelObserver implements DataChannel.Observer {
         this.peerConnectionId = peerConnectionId;
         mId = id;
         mDataChannel = dataChannel;
+
+        WebRTCModule.Options options = webRTCModule.options;
+        highWatermark = options.getDataChannelHighWatermark();
+        lowWatermark
+            = Math.min(options.getDataChannelLowWatermark(), highWatermark);
+        maxQueuedBytes = options.getDataChannelMaxQueuedBytes();
+    }
+
+    DataChannel getDataChannel() {
+        return mDataChannel;
+    }
+
+    /**
+     * Closes {@link #mDataChannel} once the messages queued by {@link #send}
+     * have been handed to it. Must be called on the executor lane of the
+     * PeerConnection.
+     *
+     * @return <tt>true</tt> if {@link #mDataChannel} has been closed right
+     * away; <tt>false</tt> if it is closed once the queue has drained
+     */
+    boolean close() {
+        closeRequested = true;
+        if (sendQueue.isEmpty()) {
+            mDataChannel.close();
+            return true;
+        }
+        Log.d(TAG, "Closing DataChannel after " + queuedBytes + " queued bytes");
+        return false;
+    }
+
+    /**
+     * Drops the queued messages because the PeerConnection is about to be
+     * disposed of along with {@link #mDataChannel}. Must be called on the
+     * executor lane of the PeerConnection.
+     */
+    void release() {
+        released = true;
+        if (!sendQueue.isEmpty()) {
+            Log.w(TAG, "Dropping " + queuedBytes + " queued bytes of a released DataChannel");
+            clearSendQueue();
+        }
+    }
+
+    /**
+     * Sends a message over {@link #mDataChannel} or, if its SCTP transport has
+     * buffered more than the high watermark, queues it to be sent once the
+     * transport drains below the low watermark. Must be called on the
+     * executor lane of the PeerConnection.
+     *
+     * @param buffer the message to send
+     * @return <tt>true</tt> if the message was sent or queued; otherwise,
+     * <tt>false</tt>
+     */
+    boolean send(DataChannel.Buffer buffer) {
+        final int size = buffer.data.remaining();
+        boolean sent;
+
+        sentBytes += size;
+
+        if (closeRequested || released) {
+            Log.w(TAG, "DataChannel is closing, rejecting message");
+            reportBufferedAmount();
+            return false;
+        }
+
+        if (sendQueue.isEmpty()) {
+            long buffered = mDataChannel.bufferedAmount();
+            // A message larger than the high watermark has to go through on
+            // its own or it will never go through at all.
+            if (buffered == 0 || buffered + size <= highWatermark) {
+                sent = mDataChannel.send(buffer);
+                if (sent) {
+                    sctpBufferedAmount = buffered + size;
+                }
+                reportBufferedAmount();
+                return sent;
+            }
+            sctpBufferedAmount = buffered;
+        }
+
+        if (maxQueuedBytes > 0 && queuedBytes + size > maxQueuedBytes) {
+            Log.w(TAG, "DataChannel send queue is full, rejecting message");
+            sent = false;
+        } else {
+            sendQueue.add(buffer);
+            queuedBytes += size;
+            sent = true;
+
+            // The transport may have drained before the message was queued in
+            // which case there will be no further onBufferedAmountChange.
+            if (mDataChannel.bufferedAmount() <= lowWatermark) {
+                scheduleDrain();
+            }
+        }
+        reportBufferedAmount();
+        return sent;
+    }
+
+    private void scheduleDrain() {
+        if (drainScheduled.compareAndSet(false, true)) {
+            ThreadUtils.runOnExecutor(peerConnectionId, this::drainSendQueue);
+        }
+    }
+
+    /**
+     * Hands the messages in {@link #sendQueue} to {@link #mDataChannel} until
+     * its SCTP transport reaches the high watermark again.
+     */
+    private void drainSendQueue() {
+        drainScheduled.set(false);
+        if (released) {
+            return;
+        }
+
+        long buffered = mDataChannel.bufferedAmount();
+        while (!sendQueue.isEmpty()) {
+            DataChannel.Buffer buffer = sendQueue.peek();
+            final int size = buffer.data.remaining();
+
+            if (buffered != 0 && buffered + size > highWatermark) {
+                break;
+            }
+            sendQueue.poll();
+            queuedBytes -= size;
+            if (mDataChannel.send(buffer)) {
+                buffered += size;
+            } else {
+                // The DataChannel is no longer open, nothing queued will make
+                // it through.
+                Log.w(TAG, "DataChannel send failed, dropping " + queuedBytes
+                    + " queued bytes");
+                clearSendQueue();
+                break;
+            }
+        }
+        sctpBufferedAmount = buffered;
+        if (closeRequested && sendQueue.isEmpty()) {
+            mDataChannel.close();
+        }
+        reportBufferedAmount();
+    }
+
+    private void clearSendQueue() {
+        sendQueue.clear();
+        queuedBytes = 0;
+    }
+
+    /**
+     * Notifies JavaScript about a change of the amount of data buffered by
+     * {@link #mDataChannel} (including {@link #sendQueue}). At most one such
+     * event is pending at any time and it reports the amount as of its
+     * delivery.
+     */
+    private void reportBufferedAmount() {
+        if (!bufferedAmountEventPending.compareAndSet(false, true)) {
+            return;
+        }
+        webRTCModule.sendEvent("dataChannelDidChangeBufferedAmount", () -> {
+            bufferedAmountEventPending.set(false);
+
+            WritableMap params = Arguments.createMap();
+            params.putInt("id", mId);
+            params.putInt("peerConnectionId", peerConnectionId);
+            params.putDouble("bufferedAmount", sctpBufferedAmount + queuedBytes);
+            params.putDouble("sentBytes", sentBytes);
+            return params;
+        });
     }
 
     @Nullable
@@ -44,7 +287,13 @@ class DataChannelObserver implements DataChannel.Observer {
     }
 
     @Override
-    public void onBufferedAmountChange(long amount) {
+    public void onBufferedAmountChange(long previousAmount) {
+        long amount = mDataChannel.bufferedAmount();
+        sctpBufferedAmount = amount;
+        if (queuedBytes > 0 && amount <= lowWatermark) {
+            scheduleDrain();
+        }
+        reportBufferedAmount();
     }
 
     @Override
@@ -53,22 +302,14 @@ class DataChannelObserver implements DataChannel.Observer {
         params.putInt("id", mId);
         params.putInt("peerConnectionId", peerConnectionId);
 
-        byte[] bytes;
-        if (buffer.data.hasArray()) {
-            bytes = buffer.data.array();
-        } else {
-            bytes = new byte[buffer.data.remaining()];
-            buffer.data.get(bytes);
-        }
-
         String type;
         String data;
         if (buffer.binary) {
             type = "binary";
-            data = Base64.encodeToString(bytes, Base64.NO_WRAP);
+            data = messageConverter.encodeBinary(buffer.data);
         } else {
             type = "text";
-            data = new String(bytes, Charset.forName("UTF-8"));
+            data = messageConverter.decodeText(buffer.data);
         }
         params.putString("type", type);
         params.putString("data", data);
@@ -78,10 +319,27 @@ class DataChannelObserver implements DataChannel.Observer {
 
     @Override
     public void onStateChange() {
-        WritableMap params = Arguments.createMap();
-        params.putInt("id", mId);
-        params.putInt("peerConnectionId", peerConnectionId);
-        params.putString("state", dataChannelStateString(mDataChannel.state()));
-        webRTCModule.sendEvent("dataChannelStateChanged", params);
+        // Read the state now, the params are built later on the event thread.
+        DataChannel.State state = mDataChannel.state();
+        if (state == DataChannel.State.CLOSING
+                || state == DataChannel.State.CLOSED) {
+            // Closed by the remote peer (a local close waits for the queue
+            // to drain) so nothing queued will make it through.
+            ThreadUtils.runOnExecutor(peerConnectionId, () -> {
+                if (!sendQueue.isEmpty()) {
+                    Log.w(TAG, "DataChannel closed, dropping " + queuedBytes
+                        + " queued bytes");
+                    clearSendQueue();
+                    reportBufferedAmount();
+                }
+            });
+        }
+        webRTCModule.sendEvent("dataChannelStateChanged", () -> {
+            WritableMap params = Arguments.createMap();
+            params.putInt("id", mId);
+            params.putInt("peerConnectionId", peerConnectionId);
+            params.putString("state", dataChannelStateString(state));
+            return params;
+        });
     }
 }
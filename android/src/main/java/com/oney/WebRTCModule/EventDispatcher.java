@@ -0,0 +1,190 @@
+package com.oney.WebRTCModule;
+
+import android.support.annotation.Nullable;
+import android.util.Log;
+
+import com.facebook.react.bridge.Arguments;
+import com.facebook.react.bridge.ReactApplicationContext;
+import com.facebook.react.bridge.WritableArray;
+import com.facebook.react.bridge.WritableMap;
+import com.facebook.react.modules.core.DeviceEventManagerModule;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Queues the events {@link WebRTCModule} sends to JavaScript and delivers them
+ * in batches, off the WebRTC signaling thread. Every batch crosses the React
+ * Native bridge as a single {@link #BATCH_EVENT_NAME} event carrying an array
+ * of <tt>{ name, data }</tt> objects which the JavaScript side unpacks into the
+ * original event names (see <tt>EventEmitter.js</tt>).
+ */
+class EventDispatcher {
+    /**
+     * The name of the event which carries a batch of events to JavaScript.
+     */
+    static final String BATCH_EVENT_NAME = "webRTCModuleEventBatch";
+
+    /**
+     * The {@link Log} tag with which {@code EventDispatcher} is to log.
+     */
+    private static final String TAG = WebRTCModule.TAG;
+
+    /**
+     * Creates the parameters of an event. Allows the (relatively expensive)
+     * construction of the <tt>WritableMap</tt> to happen on the dispatcher's
+     * thread rather than on the thread which reports the event.
+     */
+    interface ParamsFactory {
+        @Nullable
+        WritableMap create();
+    }
+
+    /**
+     * The events which have been dispatched but not delivered to JavaScript
+     * yet. Guarded by {@link #lock}.
+     */
+    private List<PendingEvent> pendingEvents = new ArrayList<>();
+
+    /**
+     * Whether a flush of {@link #pendingEvents} has been scheduled. Guarded by
+     * {@link #lock}.
+     */
+    private boolean flushScheduled;
+
+    private final Object lock = new Object();
+
+    private final ReactApplicationContext reactContext;
+
+    /**
+     * The thread on which events are built and delivered. {@code null} if
+     * batching is disabled.
+     */
+    private final ScheduledExecutorService executor;
+
+    /**
+     * The number of milliseconds for which events are collected before they
+     * are delivered as a single batch. Zero means that a batch is delivered as
+     * soon as possible i.e. it contains whatever has been dispatched while the
+     * previous batch was being delivered.
+     */
+    private final long windowMs;
+
+    /**
+     * Initializes a new {@code EventDispatcher} instance.
+     *
+     * @param reactContext the context through which events are emitted
+     * @param windowMs the batching window in milliseconds. A negative value
+     * disables batching and every event is emitted on the calling thread
+     * immediately.
+     */
+    EventDispatcher(ReactApplicationContext reactContext, long windowMs) {
+        this.reactContext = reactContext;
+        this.windowMs = windowMs;
+        this.executor
+            = windowMs < 0
+                ? null
+                : Executors.newSingleThreadScheduledExecutor(
+                    r -> new Thread(r, "WebRTCModule-events"));
+    }
+
+    void dispatch(String eventName, @Nullable WritableMap params) {
+        dispatch(eventName, () -> params);
+    }
+
+    void dispatch(String eventName, ParamsFactory paramsFactory) {
+        if (executor == null) {
+            emit(eventName, paramsFactory.create());
+            return;
+        }
+
+        synchronized (lock) {
+            pendingEvents.add(new PendingEvent(eventName, paramsFactory));
+            if (flushScheduled) {
+                return;
+            }
+            flushScheduled = true;
+        }
+
+        try {
+            if (windowMs == 0) {
+                executor.execute(this::flush);
+            } else {
+                executor.schedule(this::flush, windowMs, TimeUnit.MILLISECONDS);
+            }
+        } catch (RejectedExecutionException e) {
+            // The module has been destroyed (e.g. during a reload).
+            Log.w(TAG, "Dropped " + eventName + " after dispose");
+        }
+    }
+
+    /**
+     * Stops the thread on which events are delivered (if batching is enabled).
+     * Events which are dispatched afterwards are dropped.
+     */
+    void dispose() {
+        if (executor != null) {
+            executor.shutdownNow();
+        }
+    }
+
+    private void flush() {
+        List<PendingEvent> events;
+
+        synchronized (lock) {
+            events = pendingEvents;
+            pendingEvents = new ArrayList<>(events.size());
+            flushScheduled = false;
+        }
+
+        final int size = events.size();
+
+        if (size == 1) {
+            // There is no need to pay for the wrapping (and the unwrapping on
+            // the JavaScript side) of a batch of one.
+            PendingEvent event = events.get(0);
+            emit(event.name, event.paramsFactory.create());
+            return;
+        }
+
+        WritableArray batch = Arguments.createArray();
+        for (int i = 0; i < size; i++) {
+            PendingEvent event = events.get(i);
+            WritableMap item = Arguments.createMap();
+            item.putString("name", event.name);
+            WritableMap params = event.paramsFactory.create();
+            if (params == null) {
+                item.putNull("data");
+            } else {
+                item.putMap("data", params);
+            }
+            batch.pushMap(item);
+        }
+        emit(BATCH_EVENT_NAME, batch);
+    }
+
+    private void emit(String eventName, @Nullable Object data) {
+        try {
+            reactContext
+                .getJSModule(DeviceEventManagerModule.RCTDeviceEventEmitter.class)
+                .emit(eventName, data);
+        } catch (RuntimeException e) {
+            // The JavaScript runtime may be gone (e.g. during a reload).
+            Log.w(TAG, "Failed to emit " + eventName, e);
+        }
+    }
+
+    private static class PendingEvent {
+        final String name;
+        final ParamsFactory paramsFactory;
+
+        PendingEvent(String name, ParamsFactory paramsFactory) {
+            this.name = name;
+            this.paramsFactory = paramsFactory;
+        }
+    }
+}
@@ -1,5 +1,6 @@
 package com.oney.WebRTCModule;
 
+import android.os.SystemClock;
 import android.util.Log;
 
 import com.facebook.react.bridge.Arguments;
@@ -10,9 +11,10 @@ import com.facebook.react.bridge.ReadableMap;
 import com.facebook.react.bridge.WritableArray;
 import com.facebook.react.bridge.WritableMap;
 
-import java.util.HashMap;
+import java.util.List;
 import java.util.Map;
 import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
 
 import org.webrtc.*;
 
@@ -26,18 +28,39 @@ class GetUserMediaImpl {
      */
     private static final String TAG = WebRTCModule.TAG;
 
-    private final CameraEnumerator cameraEnumerator;
+    /**
+     * The number of milliseconds {@link #switchCamera} waits for the first
+     * frame from the new camera before it gives up.
+     */
+    private static final long SWITCH_CAMERA_TIMEOUT_MS = 5000;
+
+    private final CameraInfoCache cameraInfoCache;
     private final ReactApplicationContext reactContext;
 
     /**
      * The application/library-specific private members of local
      * {@link MediaStreamTrack}s created by {@code GetUserMediaImpl} mapped by
-     * track ID.
+     * track ID. Concurrent because PeerConnection executor lanes look up
+     * local tracks (e.g. for getStats).
      */
-    private final Map<String, TrackPrivate> tracks = new HashMap<>();
+    private final Map<String, TrackPrivate> tracks = new ConcurrentHashMap<>();
 
     private final WebRTCModule webRTCModule;
 
+    /**
+     * The capture which has been started by {@link #prewarm} and not yet
+     * taken over by {@code getUserMedia} or {@code null}. Accessed on the
+     * global executor only.
+     */
+    private VideoCapture prewarmedVideoCapture;
+
+    /**
+     * The capture threads (i.e. {@code SurfaceTextureHelper}s) of the local
+     * video tracks.
+     */
+    private final SurfaceTextureHelperPool surfaceTextureHelperPool
+        = new SurfaceTextureHelperPool();
+
     GetUserMediaImpl(
             WebRTCModule webRTCModule,
             ReactApplicationContext reactContext) {
@@ -48,6 +71,7 @@ class GetUserMediaImpl {
         //   1. Build.VERSION.SDK_INT >= Build.VERSION_CODES.LOLLIPOP
         //   2. all camera support level should greater than LEGACY
         //   see: https://developer.android.com/reference/android/hardware/camera2/CameraCharacteristics.html#INFO_SUPPORTED_HARDWARE_LEVEL
+        CameraEnumerator cameraEnumerator;
         if (Camera2Enumerator.isSupported(reactContext)) {
             Log.d(TAG, "Creating video capturer using Camera2 API.");
             cameraEnumerator = new Camera2Enumerator(reactContext);
@@ -55,6 +79,7 @@ class GetUserMediaImpl {
             Log.d(TAG, "Creating video capturer using Camera1 API.");
             cameraEnumerator = new Camera1Enumerator(false);
         }
+        cameraInfoCache = new CameraInfoCache(reactContext, cameraEnumerator);
     }
 
     private AudioTrack createAudioTrack(ReadableMap constraints) {
@@ -68,7 +93,11 @@ class GetUserMediaImpl {
         AudioTrack track = pcFactory.createAudioTrack(id, audioSource);
         tracks.put(
             id,
-            new TrackPrivate(track, audioSource, /* videoCapturer */ null));
+            new TrackPrivate(
+                track,
+                audioSource,
+                /* videoCapture */ null));
+        webRTCModule.registry.putTrack(track, MediaRegistry.LOCAL);
 
         return track;
     }
@@ -78,45 +107,201 @@ class GetUserMediaImpl {
 
         Log.d(TAG, "getUserMedia(video): " + videoConstraintsMap);
 
+        VideoCapture capture = takePrewarmedVideoCapture(videoConstraintsMap);
+        if (capture == null) {
+            capture = startVideoCapture(videoConstraintsMap);
+            if (capture == null) {
+                return null;
+            }
+        }
+
+        String id = UUID.randomUUID().toString();
+        VideoTrack track
+            = webRTCModule.mFactory.createVideoTrack(id, capture.videoSource);
+
+        track.setEnabled(true);
+
+        tracks.put(
+            id,
+            new TrackPrivate(
+                track,
+                capture.videoSource,
+                capture));
+        webRTCModule.registry.putTrack(track, MediaRegistry.LOCAL);
+
+        return track;
+    }
+
+    /**
+     * Opens a camera satisfying specific constraints and starts capturing
+     * from it into a new {@code VideoSource}.
+     *
+     * @return the started capture or {@code null} if no camera could be
+     * opened
+     */
+    private VideoCapture startVideoCapture(ReadableMap videoConstraintsMap) {
+        long startTime = SystemClock.elapsedRealtime();
         VideoCaptureController videoCaptureController
-            = new VideoCaptureController(cameraEnumerator, videoConstraintsMap);
+            = new VideoCaptureController(cameraInfoCache, videoConstraintsMap);
         VideoCapturer videoCapturer = videoCaptureController.getVideoCapturer();
         if (videoCapturer == null) {
             return null;
         }
 
+        SurfaceTextureHelper surfaceTextureHelper
+            = surfaceTextureHelperPool.acquire();
+        if (surfaceTextureHelper == null) {
+            videoCaptureController.dispose();
+            return null;
+        }
+
         PeerConnectionFactory pcFactory = webRTCModule.mFactory;
-        EglBase.Context eglContext = EglUtils.getRootEglBaseContext();
-        SurfaceTextureHelper surfaceTextureHelper =
-            SurfaceTextureHelper.create("CaptureThread", eglContext);
         VideoSource videoSource = pcFactory.createVideoSource(videoCapturer.isScreencast());
-        videoCapturer.initialize(surfaceTextureHelper, reactContext, videoSource.getCapturerObserver());
+        VideoCapture capture
+            = new VideoCapture(
+                videoConstraintsMap,
+                videoCaptureController,
+                surfaceTextureHelper,
+                videoSource,
+                startTime);
+        videoCaptureController.initialize(surfaceTextureHelper, reactContext, capture);
+
+        capture.start();
+        capture.startUpMs = SystemClock.elapsedRealtime() - startTime;
+
+        return capture;
+    }
 
-        String id = UUID.randomUUID().toString();
-        VideoTrack track = pcFactory.createVideoTrack(id, videoSource);
+    /**
+     * Implements {@code mediaDevicesPrewarm}: opens the camera and starts
+     * capturing ahead of a {@code getUserMedia} with the same (normalized)
+     * video constraints which then takes the capture over instead of going
+     * through all of it. The capture is discarded if it is not taken over
+     * within {@link WebRTCModule.Options#setCameraPrewarmTtlMs}.
+     */
+    void prewarm(ReadableMap constraints) {
+        if (!constraints.hasKey("video")) {
+            return;
+        }
 
-        track.setEnabled(true);
-        videoCaptureController.startCapture();
+        ReadableMap videoConstraintsMap = constraints.getMap("video");
+        VideoCapture capture = prewarmedVideoCapture;
+
+        if (capture != null) {
+            if (capture.constraints.equals(videoConstraintsMap.toHashMap())) {
+                Log.d(TAG, "prewarm: extending the prewarmed capture");
+                capture.expiry.cancel(false);
+                scheduleExpiry(capture);
+                return;
+            }
+            // There is one camera to warm up at a time.
+            discardPrewarmedVideoCapture("replaced");
+        }
 
-        tracks.put(id, new TrackPrivate(track, videoSource, videoCaptureController));
+        Log.d(TAG, "prewarm(video): " + videoConstraintsMap);
 
-        return track;
+        capture = startVideoCapture(videoConstraintsMap);
+        if (capture != null) {
+            prewarmedVideoCapture = capture;
+            scheduleExpiry(capture);
+        }
+    }
+
+    private void scheduleExpiry(VideoCapture capture) {
+        capture.expiry
+            = ThreadUtils.schedule(
+                () -> ThreadUtils.runOnExecutor(() -> {
+                    if (prewarmedVideoCapture == capture) {
+                        discardPrewarmedVideoCapture("expired");
+                    }
+                }),
+                webRTCModule.options.getCameraPrewarmTtlMs());
+    }
+
+    /**
+     * Takes the prewarmed capture over if it has been started with specific
+     * video constraints. Otherwise, discards it because it holds the camera
+     * which the caller is about to open.
+     */
+    private VideoCapture takePrewarmedVideoCapture(ReadableMap videoConstraintsMap) {
+        VideoCapture capture = prewarmedVideoCapture;
+
+        if (capture == null) {
+            return null;
+        }
+        if (!capture.constraints.equals(videoConstraintsMap.toHashMap())) {
+            discardPrewarmedVideoCapture("mismatched");
+            return null;
+        }
+
+        prewarmedVideoCapture = null;
+        capture.expiry.cancel(false);
+        reportPrewarm(capture, "used");
+        return capture;
+    }
+
+    private void discardPrewarmedVideoCapture(String outcome) {
+        VideoCapture capture = prewarmedVideoCapture;
+
+        prewarmedVideoCapture = null;
+        capture.expiry.cancel(false);
+        reportPrewarm(capture, outcome);
+
+        capture.removeSource(capture.videoSource, surfaceTextureHelperPool);
+        capture.videoSource.dispose();
+    }
+
+    /**
+     * Reports what has become of a prewarmed capture to JavaScript (as a
+     * {@code mediaDevicesPrewarm} event) for the purposes of
+     * instrumentation: the time spent starting the capture, the times (since
+     * the start) of the first frame and of the outcome and, for a capture
+     * which has been taken over, the time by which the first frame of
+     * {@code getUserMedia} has been brought forward.
+     */
+    private void reportPrewarm(VideoCapture capture, String outcome) {
+        long ageMs = SystemClock.elapsedRealtime() - capture.startTime;
+        long firstFrameTime = capture.firstFrameTime;
+        long firstFrameMs
+            = firstFrameTime == 0 ? -1 : firstFrameTime - capture.startTime;
+        long startUpMs = capture.startUpMs;
+
+        Log.d(TAG, "prewarm: " + outcome + " after " + ageMs + " ms");
+
+        webRTCModule.sendEvent("mediaDevicesPrewarm", () -> {
+            WritableMap params = Arguments.createMap();
+
+            params.putString("outcome", outcome);
+            params.putDouble("ageMs", ageMs);
+            params.putDouble("firstFrameMs", firstFrameMs);
+            params.putDouble("startUpMs", startUpMs);
+            if (outcome.equals("used")) {
+                // Without the prewarm, getUserMedia would have had to wait
+                // for all of the time to the first frame (and at most for
+                // the time which the prewarm has had to run).
+                params.putDouble(
+                    "savedMs",
+                    firstFrameMs == -1 ? ageMs : Math.min(ageMs, firstFrameMs));
+            }
+            return params;
+        });
     }
 
     ReadableArray enumerateDevices() {
         WritableArray array = Arguments.createArray();
-        String[] devices = cameraEnumerator.getDeviceNames();
+        List<CameraInfoCache.CameraInfo> cameras = cameraInfoCache.getCameras();
 
-        for(int i = 0; i < devices.length; ++i) {
+        for(int i = 0; i < cameras.size(); ++i) {
+            CameraInfoCache.CameraInfo camera = cameras.get(i);
             WritableMap params = Arguments.createMap();
-            if (cameraEnumerator.isFrontFacing(devices[i])) {
+            if (Boolean.TRUE.equals(camera.frontFacing)) {
                 params.putString("facing", "front");
             } else {
                 params.putString("facing", "environment");
             }
             params.putString("deviceId", "" + i);
             params.putString("groupId", "");
-            params.putString("label", devices[i]);
+            params.putString("label", camera.name);
             params.putString("kind", "videoinput");
             array.pushMap(params);
         }
@@ -197,38 +382,272 @@ class GetUserMediaImpl {
             track_.putString("label", trackId);
             track_.putString("readyState", track.state().toString());
             track_.putBoolean("remote", false);
+            if (track instanceof VideoTrack) {
+                track_.putMap("settings", this.tracks.get(trackId).getSettings());
+            }
             tracks.pushMap(track_);
         }
 
         Log.d(TAG, "MediaStream id: " + streamId);
         webRTCModule.localStreams.put(streamId, mediaStream);
+        webRTCModule.registry.putStream(streamId, mediaStream);
 
         successCallback.invoke(streamId, tracks);
     }
 
     void mediaStreamTrackSetEnabled(String trackId, final boolean enabled) {
         TrackPrivate track = tracks.get(trackId);
-        if (track != null && track.videoCaptureController != null) {
-            if (enabled) {
-                track.videoCaptureController.startCapture();
-            } else {
-                track.videoCaptureController.stopCapture();
-            }
+        if (track != null && track.videoCapture != null) {
+            track.videoCapture.setSourceEnabled(
+                (VideoSource) track.mediaSource,
+                enabled);
         }
     }
 
     void disposeTrack(String id) {
         TrackPrivate track = tracks.remove(id);
         if (track != null) {
-            track.dispose();
+            webRTCModule.registry.removeTrack(id, track.track);
+            track.dispose(surfaceTextureHelperPool);
         }
     }
 
-    void switchCamera(String trackId) {
+    /**
+     * Implements {@code MediaStreamTrack.clone()} for local video tracks: the
+     * clone gets a source of its own which is fed by the camera capture of
+     * the original track (i.e. the camera is not opened again) and which
+     * downscales the frames to the constraints of the clone (if any).
+     *
+     * @param trackId the ID of the track to clone
+     * @param cloneId the ID of the clone
+     * @param constraints the (normalized) width, height and frame rate
+     * constraints of the clone. Missing ones are inherited from the track.
+     * @return the settings of the clone or {@code null} if the track is not
+     * a local video track
+     */
+    WritableMap cloneTrack(
+            String trackId,
+            String cloneId,
+            ReadableMap constraints) {
+        TrackPrivate original = tracks.get(trackId);
+
+        if (original == null || original.videoCapture == null) {
+            return null;
+        }
+
+        PeerConnectionFactory pcFactory = webRTCModule.mFactory;
+        VideoSource videoSource = pcFactory.createVideoSource(false);
+        VideoTrack track = pcFactory.createVideoTrack(cloneId, videoSource);
+        TrackPrivate clone
+            = new TrackPrivate(track, videoSource, original.videoCapture);
+
+        setAdaptedFormat(clone, constraints, original);
+
+        WritableMap settings = clone.adaptOutputFormat();
+
+        boolean enabled = original.track.enabled();
+        track.setEnabled(enabled);
+        original.videoCapture.addSource(videoSource, enabled);
+
+        tracks.put(cloneId, clone);
+        webRTCModule.registry.putTrack(track, MediaRegistry.LOCAL);
+
+        Log.d(TAG, "Cloned track " + trackId + " as " + cloneId);
+
+        return settings;
+    }
+
+    /**
+     * Implements {@code applyConstraints} for local video tracks. The capture
+     * is retuned without restarting the camera if possible (see
+     * {@link VideoCaptureController#applyConstraints}). The constraints of a
+     * clone only adapt the frames it receives from the shared capture. If the
+     * capture format changes, the clones which share the capture are adapted
+     * to it and their new settings are sent to JavaScript in
+     * {@code mediaStreamTrackSettingsChanged} events.
+     *
+     * @param trackId the ID of the local video track
+     * @param constraints the (normalized) width, height and frame rate
+     * constraints. The missing ideal values are inherited from the current
+     * constraints.
+     * @return the new settings of the track or {@code null} if the track is
+     * not a local video track
+     */
+    WritableMap applyConstraints(String trackId, ReadableMap constraints) {
         TrackPrivate track = tracks.get(trackId);
-        if (track != null && track.videoCaptureController != null) {
-            track.videoCaptureController.switchCamera();
+
+        if (track == null || track.videoCapture == null) {
+            return null;
         }
+
+        VideoCapture videoCapture = track.videoCapture;
+
+        if (track.mediaSource == videoCapture.videoSource) {
+            VideoCaptureController videoCaptureController
+                = videoCapture.videoCaptureController;
+            WritableMap oldSettings = videoCaptureController.getSettings();
+            CameraEnumerationAndroid.CaptureFormat format
+                = videoCaptureController.applyConstraints(constraints);
+            boolean portrait = videoCaptureController.isPortrait();
+
+            track.adaptedWidth = portrait ? format.height : format.width;
+            track.adaptedHeight = portrait ? format.width : format.height;
+            track.adaptedFrameRate = format.framerate.max / 1000;
+
+            WritableMap newSettings = videoCaptureController.getSettings();
+            if (oldSettings.getInt("width") != newSettings.getInt("width")
+                    || oldSettings.getInt("height") != newSettings.getInt("height")
+                    || oldSettings.getInt("frameRate")
+                        != newSettings.getInt("frameRate")) {
+                adaptClones(track);
+            }
+        } else {
+            setAdaptedFormat(track, constraints, track);
+        }
+
+        return track.adaptOutputFormat();
+    }
+
+    /**
+     * Adapts the sources of the tracks which share the camera capture of a
+     * specific track (other than the latter) to the current capture format
+     * and sends their new settings to JavaScript.
+     */
+    private void adaptClones(TrackPrivate track) {
+        for (Map.Entry<String, TrackPrivate> e : tracks.entrySet()) {
+            TrackPrivate clone = e.getValue();
+
+            if (clone == track || clone.videoCapture != track.videoCapture) {
+                continue;
+            }
+
+            WritableMap params = Arguments.createMap();
+            params.putString("id", e.getKey());
+            params.putMap("settings", clone.adaptOutputFormat());
+            webRTCModule.sendEvent("mediaStreamTrackSettingsChanged", params);
+        }
+    }
+
+    /**
+     * Sets the width, height and frame rate to which the source of a clone
+     * adapts the captured frames.
+     *
+     * @param clone the clone
+     * @param constraints the (normalized) width, height and frame rate
+     * constraints of the clone
+     * @param fallback the track from which the missing values are inherited.
+     * A missing width or height is derived from the other one in the aspect
+     * ratio of the current settings of the track.
+     */
+    private static void setAdaptedFormat(
+            TrackPrivate clone,
+            ReadableMap constraints,
+            TrackPrivate fallback) {
+        int width = getInt(constraints, "width", 0);
+        int height = getInt(constraints, "height", 0);
+
+        if (width <= 0 && height <= 0) {
+            width = fallback.adaptedWidth;
+            height = fallback.adaptedHeight;
+        } else if (width <= 0 || height <= 0) {
+            WritableMap settings = fallback.getSettings();
+            int settingsWidth = settings.getInt("width");
+            int settingsHeight = settings.getInt("height");
+
+            if (settingsWidth > 0 && settingsHeight > 0) {
+                if (height <= 0) {
+                    height
+                        = (int) Math.round(
+                            width * settingsHeight / (double) settingsWidth);
+                } else {
+                    width
+                        = (int) Math.round(
+                            height * settingsWidth / (double) settingsHeight);
+                }
+            }
+        }
+
+        clone.adaptedWidth = width;
+        clone.adaptedHeight = height;
+        clone.adaptedFrameRate
+            = getInt(constraints, "frameRate", fallback.adaptedFrameRate);
+    }
+
+    private static int getInt(ReadableMap map, String key, int fallback) {
+        return map.hasKey(key) && !map.isNull(key) ? map.getInt(key) : fallback;
+    }
+
+    /**
+     * Switches the camera of a local video track (and of its clones) straight
+     * to a specific camera and reports the facing and the latency of the
+     * switch i.e. the time until the first frame from the new camera (or
+     * until the switch is done if the capture is stopped). Fails if the new
+     * camera does not deliver a frame (e.g. it fails to start or another
+     * switch comes along first).
+     *
+     * @param trackId the ID of the local video track
+     * @param deviceId the camera to switch to or {@code null}
+     * @param facingMode the facing of the camera to switch to if
+     * {@code deviceId} is {@code null}. If {@code null} too, the facing
+     * opposite to the current one.
+     * @param callback invoked with {@code true} and the settings of the track
+     * along with the latency or with {@code false} and an error message
+     */
+    void switchCamera(
+            String trackId,
+            String deviceId,
+            String facingMode,
+            Callback callback) {
+        TrackPrivate track = tracks.get(trackId);
+        if (track == null || track.videoCapture == null) {
+            callback.invoke(false, "Local video track not found");
+            return;
+        }
+
+        VideoCapture videoCapture = track.videoCapture;
+        long startTime = SystemClock.elapsedRealtime();
+
+        videoCapture.videoCaptureController.switchCamera(
+            deviceId,
+            facingMode,
+            new CameraVideoCapturer.CameraSwitchHandler() {
+                @Override
+                public void onCameraSwitchDone(boolean frontFacing) {
+                    VideoCapture.NextFrameTask report
+                        = new VideoCapture.NextFrameTask() {
+                            @Override
+                            public void run() {
+                                long latencyMs
+                                    = SystemClock.elapsedRealtime() - startTime;
+                                WritableMap settings = track.getSettings();
+
+                                Log.d(TAG, "switchCamera: " + settings.getString("deviceId")
+                                    + " after " + latencyMs + " ms");
+                                settings.putDouble("latencyMs", latencyMs);
+                                callback.invoke(true, settings);
+                            }
+
+                            @Override
+                            public void cancel(String reason) {
+                                Log.w(TAG, "switchCamera: " + reason);
+                                callback.invoke(false, reason);
+                            }
+                        };
+
+                    if (videoCapture.isCapturing()) {
+                        videoCapture.runOnNextFrame(
+                            report,
+                            SWITCH_CAMERA_TIMEOUT_MS);
+                    } else {
+                        report.run();
+                    }
+                }
+
+                @Override
+                public void onCameraSwitchError(String error) {
+                    callback.invoke(false, error);
+                }
+            });
     }
 
     /**
@@ -244,10 +663,20 @@ class GetUserMediaImpl {
         public final MediaStreamTrack track;
 
         /**
-         * The {@code VideoCapturer} from which {@link #mediaSource} was created
-         * if {@link #track} is a {@link VideoTrack}.
+         * The camera capture which feeds {@link #mediaSource} if
+         * {@link #track} is a {@link VideoTrack}. Shared with the clones of
+         * the track.
+         */
+        public final VideoCapture videoCapture;
+
+        /**
+         * The width, height and frame rate to which {@link #mediaSource}
+         * adapts the captured frames if {@link #track} is a clone with
+         * constraints of its own. Zero means as captured.
          */
-        public final VideoCaptureController videoCaptureController;
+        int adaptedWidth;
+        int adaptedHeight;
+        int adaptedFrameRate;
 
         /**
          * Whether this object has been disposed or not.
@@ -260,31 +689,97 @@ class GetUserMediaImpl {
          * @param track
          * @param mediaSource the {@code MediaSource} from which the specified
          * {@code code} was created
-         * @param videoCaptureController the {@code VideoCaptureController} from which the
-         * specified {@code mediaSource} was created if the specified
-         * {@code track} is a {@link VideoTrack}
+         * @param videoCapture the camera capture which feeds the specified
+         * {@code mediaSource} if the specified {@code track} is a
+         * {@link VideoTrack}
          */
         public TrackPrivate(
                 MediaStreamTrack track,
                 MediaSource mediaSource,
-                VideoCaptureController videoCaptureController) {
+                VideoCapture videoCapture) {
             this.track = track;
             this.mediaSource = mediaSource;
-            this.videoCaptureController = videoCaptureController;
+            this.videoCapture = videoCapture;
             this.disposed = false;
         }
 
-        public void dispose() {
+        /**
+         * Disposes of the track along with its source. The camera capture is
+         * released (and its {@code SurfaceTextureHelper} given back to a
+         * specific pool) along with its last track.
+         */
+        public void dispose(SurfaceTextureHelperPool surfaceTextureHelperPool) {
             if (!disposed) {
-                if (videoCaptureController != null) {
-                    if (videoCaptureController.stopCapture()) {
-                        videoCaptureController.dispose();
-                    }
+                if (videoCapture != null) {
+                    videoCapture.removeSource(
+                        (VideoSource) mediaSource,
+                        surfaceTextureHelperPool);
                 }
                 mediaSource.dispose();
                 track.dispose();
                 disposed = true;
             }
         }
+
+        /**
+         * Makes the source of the video track adapt the captured frames to
+         * {@link #adaptedWidth}, {@link #adaptedHeight} and
+         * {@link #adaptedFrameRate}.
+         *
+         * @return the resulting settings of the video track
+         */
+        WritableMap adaptOutputFormat() {
+            WritableMap settings = getSettings();
+
+            if (adaptedWidth > 0 || adaptedHeight > 0 || adaptedFrameRate > 0) {
+                int width = settings.getInt("width");
+                int height = settings.getInt("height");
+
+                // The captured frames are rotated afterwards so the format is
+                // adapted in either orientation.
+                ((VideoSource) mediaSource).adaptOutputFormat(
+                    Math.max(width, height),
+                    Math.min(width, height),
+                    Math.min(width, height),
+                    Math.max(width, height),
+                    settings.getInt("frameRate"));
+            }
+
+            return settings;
+        }
+
+        /**
+         * Gets the settings (as defined by the W3C Media Capture and Streams
+         * specification) of the video track.
+         */
+        WritableMap getSettings() {
+            WritableMap settings
+                = videoCapture.videoCaptureController.getSettings();
+
+            if (adaptedFrameRate > 0
+                    && adaptedFrameRate < settings.getInt("frameRate")) {
+                settings.putInt("frameRate", adaptedFrameRate);
+            }
+
+            // The source downscales preserving the aspect ratio. (It picks
+            // from a fixed set of scale factors, so the actual size may be
+            // a little smaller still.)
+            int width = settings.getInt("width");
+            int height = settings.getInt("height");
+            double scale = 1;
+
+            if (adaptedWidth > 0) {
+                scale = Math.min(scale, adaptedWidth / (double) width);
+            }
+            if (adaptedHeight > 0) {
+                scale = Math.min(scale, adaptedHeight / (double) height);
+            }
+            if (scale < 1) {
+                settings.putInt("width", (int) Math.round(width * scale));
+                settings.putInt("height", (int) Math.round(height * scale));
+            }
+
+            return settings;
+        }
     }
 }
@@ -0,0 +1,385 @@
+package com.oney.WebRTCModule;
+
+import java.lang.reflect.Array;
+import java.util.Arrays;
+import java.util.Map;
+
+/**
+ * Writes JSON into a <tt>char</tt> buffer which is reused across
+ * writes. Takes care of the separators between the elements of arrays and the
+ * members of objects and of the escaping of strings. The output is handed off
+ * by {@link #toString()} as the only copy.
+ * <p>
+ * Instances are not thread-safe. {@link #obtain()} provides one per thread so
+ * that the executor threads of the module each reuse their own buffer.
+ */
+final class JSONWriter {
+    /**
+     * The capacity (in <tt>char</tt>s) above which the buffer of a writer
+     * which is obtained through {@link #obtain()} is not retained after
+     * {@link #release()} so that an occasional huge document does not pin
+     * memory for the lifetime of the thread.
+     */
+    private static final int MAX_RETAINED_CAPACITY = 256 * 1024;
+
+    private static final char[] HEX_DIGITS = "0123456789abcdef".toCharArray();
+
+    private static final ThreadLocal<JSONWriter> writers
+        = new ThreadLocal<JSONWriter>() {
+            @Override
+            protected JSONWriter initialValue() {
+                return new JSONWriter();
+            }
+        };
+
+    private static final int INITIAL_CAPACITY = 1024;
+
+    /**
+     * The output written so far: the first {@link #length} <tt>char</tt>s of
+     * the buffer. A plain array rather than a <tt>StringBuilder</tt> lets
+     * strings be checked for characters to escape while they are copied
+     * rather than in a separate pass.
+     */
+    private char[] buffer = new char[INITIAL_CAPACITY];
+
+    private int length;
+
+    /**
+     * Whether nothing has been written yet at the current nesting level i.e.
+     * the next value or member name is not preceded by a comma. The enclosing
+     * levels need no such state: an array or object which is closed is a
+     * value of the enclosing level which thus is not empty anymore.
+     */
+    private boolean empty = true;
+
+    /**
+     * Whether the last thing written is a member name i.e. the next value is
+     * the value of the member rather than an element of an array.
+     */
+    private boolean afterName;
+
+    /**
+     * Gets the (reset) writer of the calling thread. It has to be given back
+     * by {@link #release()} once the output has been handed off.
+     */
+    static JSONWriter obtain() {
+        JSONWriter writer = writers.get();
+        writer.reset();
+        return writer;
+    }
+
+    void release() {
+        reset();
+        if (buffer.length > MAX_RETAINED_CAPACITY) {
+            buffer = new char[INITIAL_CAPACITY];
+        }
+    }
+
+    void reset() {
+        length = 0;
+        empty = true;
+        afterName = false;
+    }
+
+    /**
+     * Gets the number of <tt>char</tt>s written so far. Together with
+     * {@link #truncate(int, boolean)} allows taking back something which turns out to
+     * be unnecessary.
+     */
+    int length() {
+        return length;
+    }
+
+    /**
+     * Takes back everything written after a specific {@link #length()}. Must
+     * only be used at the same nesting level at which the length was taken
+     * (e.g. to drop a complete element of an array).
+     *
+     * @param length the length to go back to
+     * @param needsComma whether an element had been written at the nesting
+     * level at the time the length was taken
+     */
+    void truncate(int length, boolean needsComma) {
+        this.length = length;
+        empty = !needsComma;
+        afterName = false;
+    }
+
+    /**
+     * Tells whether an element or a member has been written at the current
+     * nesting level (i.e. whether the next one is preceded by a comma).
+     */
+    boolean needsComma() {
+        return !empty;
+    }
+
+    JSONWriter beginArray() {
+        beforeValue();
+        append('[');
+        empty = true;
+        return this;
+    }
+
+    JSONWriter endArray() {
+        append(']');
+        empty = false;
+        return this;
+    }
+
+    JSONWriter beginObject() {
+        beforeValue();
+        append('{');
+        empty = true;
+        return this;
+    }
+
+    JSONWriter endObject() {
+        append('}');
+        empty = false;
+        return this;
+    }
+
+    JSONWriter name(String name) {
+        if (empty) {
+            empty = false;
+        } else {
+            append(',');
+        }
+        append('"');
+        appendEscaped(name);
+        append('"');
+        append(':');
+        afterName = true;
+        return this;
+    }
+
+    JSONWriter value(String value) {
+        if (value == null) {
+            return nullValue();
+        }
+        beforeValue();
+        append('"');
+        appendEscaped(value);
+        append('"');
+        return this;
+    }
+
+    JSONWriter value(boolean value) {
+        beforeValue();
+        append(value ? "true" : "false");
+        return this;
+    }
+
+    JSONWriter value(long value) {
+        beforeValue();
+        appendLong(value);
+        return this;
+    }
+
+    /**
+     * Writes a number. JSON has no representation for NaN and the infinities
+     * so they are written as <tt>null</tt>.
+     */
+    JSONWriter value(double value) {
+        if (Double.isNaN(value) || Double.isInfinite(value)) {
+            return nullValue();
+        }
+        beforeValue();
+        long l = (long) value;
+        if (l == value && Math.abs(l) < (1L << 53)) {
+            // Integral values (e.g. counters, timestamps) are the most common
+            // ones and are written without the (allocating) Double.toString.
+            appendLong(l);
+        } else {
+            append(Double.toString(value));
+        }
+        return this;
+    }
+
+    JSONWriter nullValue() {
+        beforeValue();
+        append("null");
+        return this;
+    }
+
+    /**
+     * Writes an arbitrary value: strings, booleans, numbers (including
+     * <tt>BigInteger</tt>), maps, arrays (of primitives or objects) and
+     * <tt>null</tt>. Anything else is written as its <tt>toString()</tt>.
+     */
+    JSONWriter value(Object value) {
+        if (value == null) {
+            return nullValue();
+        } else if (value instanceof String) {
+            return value((String) value);
+        } else if (value instanceof Boolean) {
+            return value(((Boolean) value).booleanValue());
+        } else if (value instanceof Double || value instanceof Float) {
+            return value(((Number) value).doubleValue());
+        } else if (value instanceof Integer
+                || value instanceof Long
+                || value instanceof Short
+                || value instanceof Byte) {
+            return value(((Number) value).longValue());
+        } else if (value instanceof Number) {
+            // BigInteger (i.e. uint64) and the like.
+            beforeValue();
+            append(value.toString());
+        } else if (value instanceof Map) {
+            beginObject();
+            for (Map.Entry<?, ?> e : ((Map<?, ?>) value).entrySet()) {
+                name(String.valueOf(e.getKey()));
+                value(e.getValue());
+            }
+            endObject();
+        } else if (value.getClass().isArray()) {
+            beginArray();
+            for (int i = 0, length = Array.getLength(value); i < length; i++) {
+                value(Array.get(value, i));
+            }
+            endArray();
+        } else {
+            value(value.toString());
+        }
+        return this;
+    }
+
+    /**
+     * Creates a <tt>String</tt> out of the JSON written so far. This is the
+     * only copy the output goes through.
+     */
+    @Override
+    public String toString() {
+        return new String(buffer, 0, length);
+    }
+
+    private void beforeValue() {
+        if (afterName) {
+            afterName = false;
+        } else if (empty) {
+            empty = false;
+        } else {
+            append(',');
+        }
+    }
+
+    private void ensureCapacity(int capacity) {
+        if (capacity > buffer.length) {
+            buffer
+                = Arrays.copyOf(
+                    buffer,
+                    Math.max(capacity, buffer.length * 2));
+        }
+    }
+
+    private void append(char c) {
+        if (length == buffer.length) {
+            ensureCapacity(length + 1);
+        }
+        buffer[length++] = c;
+    }
+
+    private void append(String s) {
+        int n = s.length();
+        ensureCapacity(length + n);
+        s.getChars(0, n, buffer, length);
+        length += n;
+    }
+
+    /**
+     * Appends the decimal representation of a <tt>long</tt> without going
+     * through a temporary <tt>String</tt>.
+     */
+    private void appendLong(long value) {
+        if (value == Long.MIN_VALUE) {
+            append(Long.toString(value));
+            return;
+        }
+
+        // The longest value is 19 digits along with the sign.
+        ensureCapacity(length + 20);
+        if (value < 0) {
+            buffer[length++] = '-';
+            value = -value;
+        }
+
+        int end = length;
+        do {
+            buffer[end++] = (char) ('0' + value % 10);
+            value /= 10;
+        } while (value != 0);
+
+        for (int i = length, j = end - 1; i < j; i++, j--) {
+            char c = buffer[i];
+            buffer[i] = buffer[j];
+            buffer[j] = c;
+        }
+        length = end;
+    }
+
+    /**
+     * Appends a string (without the quotes) escaping it as necessary. Most
+     * strings (e.g. the names and values of stats) need no escaping so they
+     * are copied straight into the buffer while they are checked and only
+     * the rest of a string which turns out to need escaping goes through the
+     * slow path.
+     */
+    private void appendEscaped(String s) {
+        final int n = s.length();
+
+        ensureCapacity(length + n);
+
+        char[] buffer = this.buffer;
+        int start = length;
+        int i = 0;
+        for (; i < n; i++) {
+            char c = s.charAt(i);
+            if (c < 0x20 || c == '"' || c == '\\') {
+                break;
+            }
+            buffer[start + i] = c;
+        }
+        length = start + i;
+        if (i == n) {
+            return;
+        }
+
+        for (; i < n; i++) {
+            char c = s.charAt(i);
+            if (c >= 0x20 && c != '"' && c != '\\') {
+                append(c);
+                continue;
+            }
+
+            append('\\');
+            switch (c) {
+            case '"':
+            case '\\':
+                append(c);
+                break;
+            case '\n':
+                append('n');
+                break;
+            case '\r':
+                append('r');
+                break;
+            case '\t':
+                append('t');
+                break;
+            case '\b':
+                append('b');
+                break;
+            case '\f':
+                append('f');
+                break;
+            default:
+                append('u');
+                append('0');
+                append('0');
+                append(HEX_DIGITS[c >> 4]);
+                append(HEX_DIGITS[c & 0xf]);
+                break;
+            }
+        }
+    }
+}
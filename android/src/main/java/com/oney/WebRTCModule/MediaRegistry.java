@@ -0,0 +1,202 @@
+package com.oney.WebRTCModule;
+
+import android.support.annotation.Nullable;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+import org.webrtc.MediaStream;
+import org.webrtc.MediaStreamTrack;
+
+/**
+ * The module-wide index of the (local and remote) {@link MediaStream}s by
+ * react tag and of the {@link MediaStreamTrack}s by ID along with their
+ * owners. Kept up to date by {@link GetUserMediaImpl}, {@link WebRTCModule}
+ * and {@link PeerConnectionObserver} so that lookups (e.g. by
+ * {@link WebRTCView} on the UI thread) do not have to scan the
+ * PeerConnections.
+ * <p>
+ * Reads are lock-free and may happen on any thread. Additionally, notifies
+ * {@link TrackListener}s when the tracks they are interested in are released
+ * so that the latter do not have to be validated on every use.
+ */
+class MediaRegistry {
+    /**
+     * The owner of the tracks which are not received through a
+     * PeerConnection.
+     */
+    static final int LOCAL = -1;
+
+    private final Map<String, MediaStream> streams = new ConcurrentHashMap<>();
+
+    /**
+     * The local tracks are kept apart from the remote ones because the IDs
+     * of the latter are chosen by the remote peers and may clash with the
+     * IDs of the former. A local track takes precedence in lookups by ID
+     * (and cannot be replaced or removed by a remote track with the same
+     * ID).
+     */
+    private final Map<String, MediaStreamTrack> localTracks
+        = new ConcurrentHashMap<>();
+
+    private final Map<String, TrackEntry> remoteTracks
+        = new ConcurrentHashMap<>();
+
+    /**
+     * The {@link TrackListener}s mapped by the (not yet released) tracks they
+     * listen to. A track is a key from {@link #putTrack} until
+     * {@link #removeTrack}, so its presence also tells whether the track is
+     * still safe to use. Guarded by itself.
+     */
+    private final Map<MediaStreamTrack, List<TrackListener>> trackListeners
+        = new HashMap<>();
+
+    @Nullable
+    MediaStream getStream(String streamReactTag) {
+        return streams.get(streamReactTag);
+    }
+
+    void putStream(String streamReactTag, MediaStream stream) {
+        streams.put(streamReactTag, stream);
+    }
+
+    /**
+     * Removes a stream unless the react tag has been reassigned to a
+     * different stream in the meantime.
+     */
+    void removeStream(String streamReactTag, MediaStream stream) {
+        streams.remove(streamReactTag, stream);
+    }
+
+    /**
+     * Gets a track by ID, a local one if there are both a local and a remote
+     * one with the ID.
+     */
+    @Nullable
+    MediaStreamTrack getTrack(String trackId) {
+        MediaStreamTrack track = localTracks.get(trackId);
+        if (track != null) {
+            return track;
+        }
+
+        TrackEntry entry = remoteTracks.get(trackId);
+        return entry == null ? null : entry.track;
+    }
+
+    /**
+     * Gets the ID of the PeerConnection through which a specific track is
+     * received.
+     *
+     * @return the ID of the PeerConnection, {@link #LOCAL} for a local track
+     * or {@code null} if the track is not known
+     */
+    @Nullable
+    Integer getTrackOwner(String trackId) {
+        if (localTracks.containsKey(trackId)) {
+            return LOCAL;
+        }
+
+        TrackEntry entry = remoteTracks.get(trackId);
+        return entry == null ? null : entry.owner;
+    }
+
+    /**
+     * Adds a track.
+     *
+     * @param track the track to add
+     * @param owner the ID of the PeerConnection through which the track is
+     * received or {@link #LOCAL}
+     */
+    void putTrack(MediaStreamTrack track, int owner) {
+        synchronized (trackListeners) {
+            if (!trackListeners.containsKey(track)) {
+                trackListeners.put(track, new ArrayList<>(1));
+            }
+        }
+        if (owner == LOCAL) {
+            localTracks.put(track.id(), track);
+        } else {
+            remoteTracks.put(track.id(), new TrackEntry(track, owner));
+        }
+    }
+
+    /**
+     * Removes a track and notifies the {@link TrackListener}s of it. Must be
+     * invoked before the track is disposed of. The ID is left mapped if it
+     * has been taken over by a different track in the meantime (remote track
+     * IDs are chosen by the remote peers and may clash with each other).
+     *
+     * @param trackId the ID of the track (which is not read from the track
+     * in order to not touch it unnecessarily)
+     * @param track the track to remove
+     */
+    void removeTrack(String trackId, MediaStreamTrack track) {
+        if (!localTracks.remove(trackId, track)) {
+            TrackEntry entry = remoteTracks.get(trackId);
+            if (entry != null && entry.track == track) {
+                remoteTracks.remove(trackId, entry);
+            }
+        }
+
+        List<TrackListener> listeners;
+        synchronized (trackListeners) {
+            listeners = trackListeners.remove(track);
+        }
+        if (listeners != null) {
+            for (TrackListener listener : listeners) {
+                listener.onTrackReleased(track);
+            }
+        }
+    }
+
+    /**
+     * Starts notifying a specific listener when a specific track is released.
+     *
+     * @return {@code true} if the listener was added; {@code false} if the
+     * track has been released already (or was never added to this registry)
+     * and must not be used
+     */
+    boolean addTrackListener(MediaStreamTrack track, TrackListener listener) {
+        synchronized (trackListeners) {
+            List<TrackListener> listeners = trackListeners.get(track);
+            if (listeners == null) {
+                return false;
+            }
+            listeners.add(listener);
+            return true;
+        }
+    }
+
+    void removeTrackListener(MediaStreamTrack track, TrackListener listener) {
+        synchronized (trackListeners) {
+            List<TrackListener> listeners = trackListeners.get(track);
+            if (listeners != null) {
+                listeners.remove(listener);
+            }
+        }
+    }
+
+    /**
+     * Gets notified when a track is released.
+     */
+    interface TrackListener {
+        /**
+         * Invoked on the thread which releases a specific track right before
+         * the track is disposed of. The track must not be used afterwards.
+         */
+        void onTrackReleased(MediaStreamTrack track);
+    }
+
+    private static class TrackEntry {
+        final MediaStreamTrack track;
+        final int owner;
+
+        TrackEntry(MediaStreamTrack track, int owner) {
+            this.track = track;
+            this.owner = owner;
+        }
+    }
+}
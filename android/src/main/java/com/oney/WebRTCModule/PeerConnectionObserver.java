@@ -1,7 +1,6 @@
 package com.oney.WebRTCModule;
 
 import java.io.UnsupportedEncodingException;
-import java.lang.ref.SoftReference;
 import java.nio.ByteBuffer;
 import java.util.ArrayList;
 import java.util.HashMap;
@@ -9,6 +8,7 @@ import java.util.Iterator;
 import java.util.List;
 import java.util.Map;
 import java.util.UUID;
+import java.util.concurrent.ScheduledFuture;
 
 import android.support.annotation.Nullable;
 import android.util.Base64;
@@ -17,6 +17,7 @@ import android.util.SparseArray;
 
 import com.facebook.react.bridge.Arguments;
 import com.facebook.react.bridge.Callback;
+import com.facebook.react.bridge.ReadableArray;
 import com.facebook.react.bridge.ReadableMap;
 import com.facebook.react.bridge.WritableArray;
 import com.facebook.react.bridge.WritableMap;
@@ -28,6 +29,7 @@ import org.webrtc.MediaStream;
 import org.webrtc.MediaStreamTrack;
 import org.webrtc.PeerConnection;
 import org.webrtc.RtpReceiver;
+import org.webrtc.RtpSender;
 import org.webrtc.StatsObserver;
 import org.webrtc.StatsReport;
 import org.webrtc.VideoTrack;
@@ -35,8 +37,14 @@ import org.webrtc.VideoTrack;
 class PeerConnectionObserver implements PeerConnection.Observer {
     private final static String TAG = WebRTCModule.TAG;
 
-    private final SparseArray<DataChannel> dataChannels
-        = new SparseArray<DataChannel>();
+    private final SparseArray<DataChannelObserver> dataChannels
+        = new SparseArray<DataChannelObserver>();
+    /**
+     * The DataChannels which JavaScript has closed but which are still
+     * draining their send queues. Released along with the PeerConnection.
+     */
+    private final List<DataChannelObserver> closingDataChannels
+        = new ArrayList<>();
     private final int id;
     private PeerConnection peerConnection;
     final List<MediaStream> localStreams;
@@ -46,13 +54,32 @@ class PeerConnectionObserver implements PeerConnection.Observer {
     private final WebRTCModule webRTCModule;
 
     /**
-     * The <tt>StringBuilder</tt> cache utilized by {@link #statsToJSON} in
-     * order to minimize the number of allocations of <tt>StringBuilder</tt>
-     * instances and, more importantly, the allocations of its <tt>char</tt>
-     * buffer in an attempt to improve performance.
+     * The number of milliseconds for which gathered ICE candidates are
+     * collected before they are sent to JavaScript as a single
+     * <tt>peerConnectionGotICECandidates</tt> event. Zero (the default)
+     * disables the batching and every candidate is sent as a separate
+     * <tt>peerConnectionGotICECandidate</tt> event.
      */
-    private SoftReference<StringBuilder> statsToJSONStringBuilder
-        = new SoftReference<>(null);
+    private int iceCandidateBatchWindowMs;
+
+    /**
+     * The maximum number of ICE candidates in a single batch. When reached,
+     * the batch is sent without waiting for the end of the window. Zero means
+     * no limit.
+     */
+    private int iceCandidateBatchMaxSize;
+
+    /**
+     * The gathered ICE candidates which have not been sent to JavaScript yet.
+     * Also serves as the lock which guards {@link #iceCandidatesFlushTask}.
+     */
+    private final List<IceCandidate> pendingIceCandidates = new ArrayList<>();
+
+    /**
+     * The scheduled task which will send {@link #pendingIceCandidates} at the
+     * end of the current batching window, if any.
+     */
+    private ScheduledFuture<?> iceCandidatesFlushTask;
 
     PeerConnectionObserver(WebRTCModule webRTCModule, int id) {
         this.webRTCModule = webRTCModule;
@@ -72,7 +99,7 @@ class PeerConnectionObserver implements PeerConnection.Observer {
      * @return <tt>true</tt> if the specified <tt>localStream</tt> was added to
      * the associated <tt>PeerConnection</tt>; otherwise, <tt>false</tt>
      */
-    boolean addStream(MediaStream localStream) {
+    synchronized boolean addStream(MediaStream localStream) {
         if (peerConnection != null && peerConnection.addStream(localStream)) {
             localStreams.add(localStream);
 
@@ -92,7 +119,7 @@ class PeerConnectionObserver implements PeerConnection.Observer {
      * this instance resulted in a modification of its internal list of local
      * <tt>MediaStream</tt>s; otherwise, <tt>false</tt>
      */
-    boolean removeStream(MediaStream localStream) {
+    synchronized boolean removeStream(MediaStream localStream) {
         if (peerConnection != null) {
             peerConnection.removeStream(localStream);
         }
@@ -104,16 +131,49 @@ class PeerConnectionObserver implements PeerConnection.Observer {
         return peerConnection;
     }
 
+    VideoTrackAdapter getVideoTrackAdapters() {
+        return videoTrackAdapters;
+    }
+
     void setPeerConnection(PeerConnection peerConnection) {
         this.peerConnection = peerConnection;
     }
 
-    void close() {
+    /**
+     * Configures the batching of gathered ICE candidates.
+     *
+     * @param windowMs the number of milliseconds for which candidates are
+     * collected before they are sent as a batch; zero disables batching
+     * @param maxSize the maximum number of candidates in a batch; zero means
+     * no limit
+     */
+    void setIceCandidateBatching(int windowMs, int maxSize) {
+        synchronized (pendingIceCandidates) {
+            iceCandidateBatchWindowMs = Math.max(0, windowMs);
+            iceCandidateBatchMaxSize = Math.max(0, maxSize);
+        }
+    }
+
+    /**
+     * Closes and disposes of the associated <tt>PeerConnection</tt>.
+     * Synchronized with {@link #addStream} and {@link #removeStream} because
+     * local <tt>MediaStream</tt>s are released on the global executor while
+     * this instance is closed on its own executor lane.
+     */
+    synchronized void close() {
         Log.d(TAG, "PeerConnection.close() for " + id);
 
         // Close the PeerConnection first to stop any events.
         peerConnection.close();
 
+        synchronized (pendingIceCandidates) {
+            if (iceCandidatesFlushTask != null) {
+                iceCandidatesFlushTask.cancel(false);
+                iceCandidatesFlushTask = null;
+            }
+            pendingIceCandidates.clear();
+        }
+
         // PeerConnection.dispose() calls MediaStream.dispose() on all local
         // MediaStreams added to it and the app may crash if a local MediaStream
         // is added to multiple PeerConnections. In order to reduce the risks of
@@ -130,17 +190,36 @@ class PeerConnectionObserver implements PeerConnection.Observer {
             }
         }
 
+        // Unregister the remote streams and tracks before they are disposed
+        // of along with the PeerConnection.
+        MediaRegistry registry = webRTCModule.registry;
+        for (Map.Entry<String, MediaStream> e : remoteStreams.entrySet()) {
+            registry.removeStream(e.getKey(), e.getValue());
+        }
+        for (Map.Entry<String, MediaStreamTrack> e : remoteTracks.entrySet()) {
+            registry.removeTrack(e.getKey(), e.getValue());
+        }
+
         // At this point there should be no local MediaStreams in the associated
         // PeerConnection. Call dispose() to free all remaining resources held
         // by the PeerConnection instance (RtpReceivers, RtpSenders, etc.)
         peerConnection.dispose();
+        peerConnection = null;
 
         remoteStreams.clear();
         remoteTracks.clear();
 
         // Unlike on iOS, we cannot unregister the DataChannel.Observer
-        // instance on Android. At least do whatever else we do on iOS.
+        // instance on Android. At least do whatever else we do on iOS and
+        // keep the observers off the disposed DataChannels.
+        for (int i = 0, size = dataChannels.size(); i < size; i++) {
+            dataChannels.valueAt(i).release();
+        }
+        for (DataChannelObserver dataChannel : closingDataChannels) {
+            dataChannel.release();
+        }
         dataChannels.clear();
+        closingDataChannels.clear();
     }
 
     void createDataChannel(String label, ReadableMap config) {
@@ -168,15 +247,16 @@ class PeerConnectionObserver implements PeerConnection.Observer {
         DataChannel dataChannel = peerConnection.createDataChannel(label, init);
         int dataChannelId = init.id;
         if (-1 != dataChannelId) {
-            dataChannels.put(dataChannelId, dataChannel);
             registerDataChannelObserver(dataChannelId, dataChannel);
         }
     }
 
     void dataChannelClose(int dataChannelId) {
-        DataChannel dataChannel = dataChannels.get(dataChannelId);
+        DataChannelObserver dataChannel = dataChannels.get(dataChannelId);
         if (dataChannel != null) {
-            dataChannel.close();
+            if (!dataChannel.close()) {
+                closingDataChannels.add(dataChannel);
+            }
             dataChannels.remove(dataChannelId);
         } else {
             Log.d(TAG, "dataChannelClose() dataChannel is null");
@@ -184,28 +264,98 @@ class PeerConnectionObserver implements PeerConnection.Observer {
     }
 
     void dataChannelSend(int dataChannelId, String data, String type) {
-        DataChannel dataChannel = dataChannels.get(dataChannelId);
+        DataChannelObserver dataChannel = dataChannels.get(dataChannelId);
         if (dataChannel != null) {
-            byte[] byteArray;
-            if (type.equals("text")) {
+            DataChannel.Buffer buffer = createDataChannelBuffer(data, type);
+            if (buffer == null || !dataChannel.send(buffer)) {
+                // JavaScript has returned from send() already so it learns
+                // about the rejection (e.g. a full send queue) from an event.
+                WritableMap params = Arguments.createMap();
+                params.putInt("id", dataChannelId);
+                params.putInt("peerConnectionId", id);
+                webRTCModule.sendEvent("dataChannelSendFailed", params);
+            }
+        } else {
+            Log.d(TAG, "dataChannelSend() dataChannel is null");
+        }
+    }
+
+    /**
+     * Sends multiple messages over a specific <tt>DataChannel</tt> in one go.
+     * A message which fails to be sent does not abort the sending of the
+     * remaining messages.
+     *
+     * @param dataChannelId the ID of the <tt>DataChannel</tt> to send over
+     * @param messages the messages to send, each a map with the keys
+     * <tt>data</tt> and <tt>type</tt> like the arguments of
+     * {@link #dataChannelSend}
+     * @return an array of booleans which tells, for each message in order,
+     * whether it was sent (or queued to be sent)
+     */
+    WritableArray dataChannelSendBatch(int dataChannelId, ReadableArray messages) {
+        WritableArray results = Arguments.createArray();
+        DataChannelObserver dataChannel = dataChannels.get(dataChannelId);
+        if (dataChannel == null) {
+            Log.d(TAG, "dataChannelSendBatch() dataChannel is null");
+        }
+        for (int i = 0, size = messages.size(); i < size; i++) {
+            boolean sent = false;
+            if (dataChannel != null) {
                 try {
-                    byteArray = data.getBytes("UTF-8");
-                } catch (UnsupportedEncodingException e) {
-                    Log.d(TAG, "Could not encode text string as UTF-8.");
-                    return;
+                    ReadableMap message = messages.getMap(i);
+                    DataChannel.Buffer buffer
+                        = message == null
+                            ? null
+                            : createDataChannelBuffer(
+                                message.getString("data"),
+                                message.getString("type"));
+                    sent = buffer != null && dataChannel.send(buffer);
+                } catch (RuntimeException e) {
+                    Log.w(TAG, "dataChannelSendBatch() failed to send message " + i, e);
                 }
-            } else if (type.equals("binary")) {
+            }
+            results.pushBoolean(sent);
+        }
+        return results;
+    }
+
+    /**
+     * Creates the <tt>DataChannel.Buffer</tt> of a message received from
+     * JavaScript.
+     *
+     * @param data the text or the Base64-encoded binary data of the message
+     * @param type <tt>text</tt> or <tt>binary</tt>
+     * @return the <tt>DataChannel.Buffer</tt> to send or <tt>null</tt> if the
+     * message is malformed
+     */
+    @Nullable
+    private static DataChannel.Buffer createDataChannelBuffer(String data, String type) {
+        if (data == null || type == null) {
+            Log.e(TAG, "Malformed DataChannel message");
+            return null;
+        }
+
+        byte[] byteArray;
+        if (type.equals("text")) {
+            try {
+                byteArray = data.getBytes("UTF-8");
+            } catch (UnsupportedEncodingException e) {
+                Log.d(TAG, "Could not encode text string as UTF-8.");
+                return null;
+            }
+        } else if (type.equals("binary")) {
+            try {
                 byteArray = Base64.decode(data, Base64.NO_WRAP);
-            } else {
-                Log.e(TAG, "Unsupported data type: " + type);
-                return;
+            } catch (IllegalArgumentException e) {
+                Log.d(TAG, "Could not decode binary data as Base64.");
+                return null;
             }
-            ByteBuffer byteBuffer = ByteBuffer.wrap(byteArray);
-            DataChannel.Buffer buffer = new DataChannel.Buffer(byteBuffer, type.equals("binary"));
-            dataChannel.send(buffer);
         } else {
-            Log.d(TAG, "dataChannelSend() dataChannel is null");
+            Log.e(TAG, "Unsupported data type: " + type);
+            return null;
         }
+        ByteBuffer byteBuffer = ByteBuffer.wrap(byteArray);
+        return new DataChannel.Buffer(byteBuffer, type.equals("binary"));
     }
 
     @SuppressWarnings("deprecation") // TODO(saghul): getStats is deprecated.
@@ -224,6 +374,59 @@ class PeerConnectionObserver implements PeerConnection.Observer {
         }
     }
 
+    /**
+     * Gets the standard stats (i.e. those of the WebRTC Statistics API) of the
+     * associated PeerConnection or, if a track is specified, those of the
+     * sender or receiver of the track. The stats are serialized on the
+     * executor lane of the PeerConnection rather than on the WebRTC signaling
+     * thread which reports them.
+     *
+     * @param trackId the ID of the track to select the stats of or
+     * <tt>null</tt>/empty to get all stats
+     * @param cb the <tt>Callback</tt> to invoke with <tt>true</tt> and the
+     * JSON representation of the stats (see {@link StatsUtils#toJSON}) or with
+     * <tt>false</tt> and an error message
+     */
+    void getStatsReport(String trackId, final Callback cb) {
+        if (trackId == null || trackId.isEmpty()) {
+            peerConnection.getStats(report ->
+                ThreadUtils.runOnExecutor(id, () ->
+                    cb.invoke(true, StatsUtils.toJSON(report.getStatsMap().values()))));
+            return;
+        }
+
+        Boolean outbound = null;
+        for (RtpSender sender : peerConnection.getSenders()) {
+            MediaStreamTrack track = sender.track();
+            if (track != null && trackId.equals(track.id())) {
+                outbound = Boolean.TRUE;
+                break;
+            }
+        }
+        if (outbound == null) {
+            for (RtpReceiver receiver : peerConnection.getReceivers()) {
+                MediaStreamTrack track = receiver.track();
+                if (track != null && trackId.equals(track.id())) {
+                    outbound = Boolean.FALSE;
+                    break;
+                }
+            }
+        }
+        if (outbound == null) {
+            Log.e(TAG, "peerConnectionGetStatsReport() No sender or receiver for track: " + trackId);
+            cb.invoke(false, "Track not found");
+            return;
+        }
+
+        final boolean selectOutbound = outbound;
+        peerConnection.getStats(report ->
+            ThreadUtils.runOnExecutor(id, () ->
+                cb.invoke(
+                    true,
+                    StatsUtils.toJSON(
+                        StatsUtils.select(report, trackId, selectOutbound)))));
+    }
+
     /**
      * Constructs a JSON <tt>String</tt> representation of a specific array of
      * <tt>StatsReport</tt>s (produced by {@link PeerConnection#getStats}).
@@ -238,62 +441,99 @@ class PeerConnectionObserver implements PeerConnection.Observer {
      * @return a <tt>String</tt> which represents the specified <tt>reports</tt>
      * in JSON format
      */
-    private String statsToJSON(StatsReport[] reports) {
-        // If possible, reuse a single StringBuilder instance across multiple
-        // getStats method calls in order to reduce the total number of
-        // allocations.
-        StringBuilder s = statsToJSONStringBuilder.get();
-        if (s == null) {
-            s = new StringBuilder();
-            statsToJSONStringBuilder = new SoftReference(s);
-        }
-
-        s.append('[');
-        final int reportCount = reports.length;
-        for (int i = 0; i < reportCount; ++i) {
-            StatsReport report = reports[i];
-            if (i != 0) {
-                s.append(',');
-            }
-            s.append("{\"id\":\"").append(report.id)
-                .append("\",\"type\":\"").append(report.type)
-                .append("\",\"timestamp\":").append(report.timestamp)
-                .append(",\"values\":[");
-            StatsReport.Value[] values = report.values;
-            final int valueCount = values.length;
-            for (int j = 0; j < valueCount; ++j) {
-                StatsReport.Value v = values[j];
-                if (j != 0) {
-                    s.append(',');
+    static String statsToJSON(StatsReport[] reports) {
+        // The writer (and thus its buffer) is reused by every getStats call
+        // which is serialized on the same thread.
+        JSONWriter writer = JSONWriter.obtain();
+        try {
+            writer.beginArray();
+            for (StatsReport report : reports) {
+                writer.beginObject()
+                    .name("id").value(report.id)
+                    .name("type").value(report.type)
+                    .name("timestamp").value(report.timestamp)
+                    .name("values").beginArray();
+                for (StatsReport.Value v : report.values) {
+                    writer.beginObject().name(v.name).value(v.value).endObject();
                 }
-                s.append("{\"").append(v.name).append("\":\"").append(v.value)
-                    .append("\"}");
+                writer.endArray().endObject();
             }
-            s.append("]}");
+            writer.endArray();
+            return writer.toString();
+        } finally {
+            writer.release();
         }
-        s.append("]");
-
-        String r = s.toString();
-        // Prepare the StringBuilder instance for reuse (in order to reduce the
-        // total number of allocations performed during multiple getStats method
-        // calls).
-        s.setLength(0);
-
-        return r;
     }
 
     @Override
     public void onIceCandidate(final IceCandidate candidate) {
         Log.d(TAG, "onIceCandidate");
-        WritableMap params = Arguments.createMap();
-        params.putInt("id", id);
-        WritableMap candidateParams = Arguments.createMap();
-        candidateParams.putInt("sdpMLineIndex", candidate.sdpMLineIndex);
-        candidateParams.putString("sdpMid", candidate.sdpMid);
-        candidateParams.putString("candidate", candidate.sdp);
-        params.putMap("candidate", candidateParams);
 
-        webRTCModule.sendEvent("peerConnectionGotICECandidate", params);
+        synchronized (pendingIceCandidates) {
+            if (iceCandidateBatchWindowMs > 0) {
+                pendingIceCandidates.add(candidate);
+                if (iceCandidateBatchMaxSize > 0
+                        && pendingIceCandidates.size() >= iceCandidateBatchMaxSize) {
+                    flushIceCandidates();
+                } else if (iceCandidatesFlushTask == null) {
+                    iceCandidatesFlushTask
+                        = ThreadUtils.schedule(
+                            this::flushIceCandidates,
+                            iceCandidateBatchWindowMs);
+                }
+                return;
+            }
+        }
+
+        webRTCModule.sendEvent("peerConnectionGotICECandidate", () -> {
+            WritableMap params = Arguments.createMap();
+            params.putInt("id", id);
+            WritableMap candidateParams = Arguments.createMap();
+            candidateParams.putInt("sdpMLineIndex", candidate.sdpMLineIndex);
+            candidateParams.putString("sdpMid", candidate.sdpMid);
+            candidateParams.putString("candidate", candidate.sdp);
+            params.putMap("candidate", candidateParams);
+            return params;
+        });
+    }
+
+    /**
+     * Sends the pending gathered ICE candidates, if any, to JavaScript as a
+     * single <tt>peerConnectionGotICECandidates</tt> event.
+     */
+    private void flushIceCandidates() {
+        final IceCandidate[] candidates;
+
+        synchronized (pendingIceCandidates) {
+            if (iceCandidatesFlushTask != null) {
+                iceCandidatesFlushTask.cancel(false);
+                iceCandidatesFlushTask = null;
+            }
+            if (pendingIceCandidates.isEmpty()) {
+                return;
+            }
+            candidates
+                = pendingIceCandidates.toArray(
+                    new IceCandidate[pendingIceCandidates.size()]);
+            pendingIceCandidates.clear();
+
+            // Send while holding the lock so that batches cannot overtake
+            // each other.
+            webRTCModule.sendEvent("peerConnectionGotICECandidates", () -> {
+                WritableMap params = Arguments.createMap();
+                params.putInt("id", id);
+                WritableArray candidatesParams = Arguments.createArray();
+                for (IceCandidate candidate : candidates) {
+                    WritableMap candidateParams = Arguments.createMap();
+                    candidateParams.putInt("sdpMLineIndex", candidate.sdpMLineIndex);
+                    candidateParams.putString("sdpMid", candidate.sdpMid);
+                    candidateParams.putString("candidate", candidate.sdp);
+                    candidatesParams.pushMap(candidateParams);
+                }
+                params.putArray("candidates", candidatesParams);
+                return params;
+            });
+        }
     }
 
     @Override
@@ -303,11 +543,12 @@ class PeerConnectionObserver implements PeerConnection.Observer {
 
     @Override
     public void onIceConnectionChange(PeerConnection.IceConnectionState iceConnectionState) {
-        WritableMap params = Arguments.createMap();
-        params.putInt("id", id);
-        params.putString("iceConnectionState", iceConnectionStateString(iceConnectionState));
-
-        webRTCModule.sendEvent("peerConnectionIceConnectionChanged", params);
+        webRTCModule.sendEvent("peerConnectionIceConnectionChanged", () -> {
+            WritableMap params = Arguments.createMap();
+            params.putInt("id", id);
+            params.putString("iceConnectionState", iceConnectionStateString(iceConnectionState));
+            return params;
+        });
     }
 
     @Override
@@ -317,10 +558,15 @@ class PeerConnectionObserver implements PeerConnection.Observer {
     @Override
     public void onIceGatheringChange(PeerConnection.IceGatheringState iceGatheringState) {
         Log.d(TAG, "onIceGatheringChange" + iceGatheringState.name());
-        WritableMap params = Arguments.createMap();
-        params.putInt("id", id);
-        params.putString("iceGatheringState", iceGatheringStateString(iceGatheringState));
-        webRTCModule.sendEvent("peerConnectionIceGatheringChanged", params);
+        // The candidates gathered so far must reach JavaScript before the
+        // (end of) gathering state change does.
+        flushIceCandidates();
+        webRTCModule.sendEvent("peerConnectionIceGatheringChanged", () -> {
+            WritableMap params = Arguments.createMap();
+            params.putInt("id", id);
+            params.putString("iceGatheringState", iceGatheringStateString(iceGatheringState));
+            return params;
+        });
     }
 
     private String getReactTagForStream(MediaStream mediaStream) {
@@ -354,6 +600,7 @@ class PeerConnectionObserver implements PeerConnection.Observer {
         if (streamReactTag == null) {
             streamReactTag = UUID.randomUUID().toString();
             remoteStreams.put(streamReactTag, mediaStream);
+            webRTCModule.registry.putStream(streamReactTag, mediaStream);
         }
 
         WritableMap params = Arguments.createMap();
@@ -368,6 +615,7 @@ class PeerConnectionObserver implements PeerConnection.Observer {
             String trackId = track.id();
 
             remoteTracks.put(trackId, track);
+            webRTCModule.registry.putTrack(track, id);
 
             WritableMap trackInfo = Arguments.createMap();
             trackInfo.putString("id", trackId);
@@ -385,6 +633,7 @@ class PeerConnectionObserver implements PeerConnection.Observer {
             String trackId = track.id();
 
             remoteTracks.put(trackId, track);
+            webRTCModule.registry.putTrack(track, id);
 
             WritableMap trackInfo = Arguments.createMap();
             trackInfo.putString("id", trackId);
@@ -410,15 +659,19 @@ class PeerConnectionObserver implements PeerConnection.Observer {
             return;
         }
 
+        MediaRegistry registry = webRTCModule.registry;
         for (VideoTrack track : mediaStream.videoTracks) {
             this.videoTrackAdapters.removeAdapter(track);
             this.remoteTracks.remove(track.id());
+            registry.removeTrack(track.id(), track);
         }
         for (AudioTrack track : mediaStream.audioTracks) {
             this.remoteTracks.remove(track.id());
+            registry.removeTrack(track.id(), track);
         }
 
         this.remoteStreams.remove(streamReactTag);
+        registry.removeStream(streamReactTag, mediaStream);
 
         WritableMap params = Arguments.createMap();
         params.putInt("id", id);
@@ -440,7 +693,6 @@ class PeerConnectionObserver implements PeerConnection.Observer {
         params.putInt("id", id);
         params.putMap("dataChannel", dataChannelParams);
 
-        dataChannels.put(dataChannelId, dataChannel);
         registerDataChannelObserver(dataChannelId, dataChannel);
 
         webRTCModule.sendEvent("peerConnectionDidOpenDataChannel", params);
@@ -450,23 +702,29 @@ class PeerConnectionObserver implements PeerConnection.Observer {
         // DataChannel.registerObserver implementation does not allow to
         // unregister, so the observer is registered here and is never
         // unregistered
-        dataChannel.registerObserver(
-            new DataChannelObserver(webRTCModule, id, dcId, dataChannel));
+        DataChannelObserver observer
+            = new DataChannelObserver(webRTCModule, id, dcId, dataChannel);
+        dataChannels.put(dcId, observer);
+        dataChannel.registerObserver(observer);
     }
 
     @Override
     public void onRenegotiationNeeded() {
-        WritableMap params = Arguments.createMap();
-        params.putInt("id", id);
-        webRTCModule.sendEvent("peerConnectionOnRenegotiationNeeded", params);
+        webRTCModule.sendEvent("peerConnectionOnRenegotiationNeeded", () -> {
+            WritableMap params = Arguments.createMap();
+            params.putInt("id", id);
+            return params;
+        });
     }
 
     @Override
     public void onSignalingChange(PeerConnection.SignalingState signalingState) {
-        WritableMap params = Arguments.createMap();
-        params.putInt("id", id);
-        params.putString("signalingState", signalingStateString(signalingState));
-        webRTCModule.sendEvent("peerConnectionSignalingStateChanged", params);
+        webRTCModule.sendEvent("peerConnectionSignalingStateChanged", () -> {
+            WritableMap params = Arguments.createMap();
+            params.putInt("id", id);
+            params.putString("signalingState", signalingStateString(signalingState));
+            return params;
+        });
     }
 
     @Override
@@ -0,0 +1,41 @@
+package com.oney.WebRTCModule;
+
+import com.facebook.react.bridge.ReadableArray;
+import com.facebook.react.uimanager.annotations.ReactProp;
+import com.facebook.react.uimanager.SimpleViewManager;
+import com.facebook.react.uimanager.ThemedReactContext;
+
+public class RTCGridViewManager extends SimpleViewManager<WebRTCGridView> {
+  private static final String REACT_CLASS = "RTCGridView";
+
+  @Override
+  public String getName() {
+    return REACT_CLASS;
+  }
+
+  @Override
+  public WebRTCGridView createViewInstance(ThemedReactContext context) {
+    return new WebRTCGridView(context);
+  }
+
+  @Override
+  public void onDropViewInstance(WebRTCGridView view) {
+    // Let go of the tracks (and the listeners registered for them).
+    view.setTiles(null);
+    super.onDropViewInstance(view);
+  }
+
+  /**
+   * Sets the tiles of a specific {@link WebRTCGridView}. For more details,
+   * refer to the documentation of the {@code tiles} property of the
+   * JavaScript counterpart of {@code WebRTCGridView} i.e. {@code RTCGridView}.
+   *
+   * @param view The {@code WebRTCGridView} on which the specified
+   * {@code tiles} are to be set.
+   * @param tiles The tiles to set on the specified {@code WebRTCGridView}.
+   */
+  @ReactProp(name = "tiles")
+  public void setTiles(WebRTCGridView view, ReadableArray tiles) {
+    view.setTiles(tiles);
+  }
+}
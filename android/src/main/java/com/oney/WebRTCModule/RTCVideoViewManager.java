@@ -1,5 +1,6 @@
 package com.oney.WebRTCModule;
 
+import com.facebook.react.bridge.ReadableMap;
 import com.facebook.react.uimanager.annotations.ReactProp;
 import com.facebook.react.uimanager.SimpleViewManager;
 import com.facebook.react.uimanager.ThemedReactContext;
@@ -8,6 +9,37 @@ import com.facebook.react.uimanager.ThemedReactContext;
 public class RTCVideoViewManager extends SimpleViewManager<WebRTCView> {
   private static final String REACT_CLASS = "RTCVideoView";
 
+  /**
+   * The pool of initialized {@code SurfaceViewRenderer}s shared by the
+   * {@link WebRTCView}s created by this manager.
+   */
+  private final SurfaceViewRendererPool rendererPool;
+
+  public RTCVideoViewManager() {
+    this(
+        SurfaceViewRendererPool.DEFAULT_MAX_SIZE,
+        SurfaceViewRendererPool.DEFAULT_IDLE_TIMEOUT_MS);
+  }
+
+  /**
+   * Initializes a new manager with a specific configuration of the pool of
+   * {@code SurfaceViewRenderer}s which are reused across the mounts of
+   * {@link WebRTCView}s.
+   *
+   * @param rendererPoolSize The maximum number of idle renderers to retain.
+   * Zero disables pooling.
+   * @param rendererPoolIdleTimeoutMs The number of milliseconds after which an
+   * idle renderer is released.
+   */
+  public RTCVideoViewManager(
+      int rendererPoolSize,
+      long rendererPoolIdleTimeoutMs) {
+    rendererPool
+      = new SurfaceViewRendererPool(
+          rendererPoolSize,
+          rendererPoolIdleTimeoutMs);
+  }
+
   @Override
   public String getName() {
     return REACT_CLASS;
@@ -15,7 +47,15 @@ public class RTCVideoViewManager extends SimpleViewManager<WebRTCView> {
 
   @Override
   public WebRTCView createViewInstance(ThemedReactContext context) {
-    return new WebRTCView(context);
+    return new WebRTCView(context, rendererPool);
+  }
+
+  @Override
+  public void onDropViewInstance(WebRTCView view) {
+    // Let go of the track (and the listener registered for it) which may
+    // outlive the view.
+    view.setStreamURL(null);
+    super.onDropViewInstance(view);
   }
 
   /**
@@ -35,6 +75,48 @@ public class RTCVideoViewManager extends SimpleViewManager<WebRTCView> {
     view.setMirror(mirror);
   }
 
+  /**
+   * Sets the maximum number of frames per second a specific
+   * {@link WebRTCView} renders. For more details, refer to the documentation
+   * of the {@code maxFrameRate} property of the JavaScript counterpart of
+   * {@code WebRTCView} i.e. {@code RTCView}.
+   *
+   * @param view The {@code WebRTCView} on which the specified
+   * {@code maxFrameRate} is to be set.
+   * @param maxFrameRate The maximum frame rate or zero for no limit.
+   */
+  @ReactProp(name = "maxFrameRate")
+  public void setMaxFrameRate(WebRTCView view, float maxFrameRate) {
+    view.setMaxFrameRate(maxFrameRate);
+  }
+
+  /**
+   * Sets the maximum size of the frames a specific {@link WebRTCView}
+   * renders. For more details, refer to the documentation of the
+   * {@code maxRenderSize} property of the JavaScript counterpart of
+   * {@code WebRTCView} i.e. {@code RTCView}.
+   *
+   * @param view The {@code WebRTCView} on which the specified
+   * {@code maxRenderSize} is to be set.
+   * @param maxRenderSize The maximum <tt>width</tt> and <tt>height</tt> in
+   * pixels or {@code null} for no limit.
+   */
+  @ReactProp(name = "maxRenderSize")
+  public void setMaxRenderSize(WebRTCView view, ReadableMap maxRenderSize) {
+    int width = 0;
+    int height = 0;
+
+    if (maxRenderSize != null) {
+      if (maxRenderSize.hasKey("width") && !maxRenderSize.isNull("width")) {
+        width = maxRenderSize.getInt("width");
+      }
+      if (maxRenderSize.hasKey("height") && !maxRenderSize.isNull("height")) {
+        height = maxRenderSize.getInt("height");
+      }
+    }
+    view.setMaxRenderSize(width, height);
+  }
+
   /**
    * In the fashion of
    * https://www.w3.org/TR/html5/embedded-content-0.html#dom-video-videowidth
@@ -0,0 +1,401 @@
+package com.oney.WebRTCModule;
+
+import android.os.SystemClock;
+import android.support.annotation.Nullable;
+
+import com.facebook.react.bridge.Arguments;
+import com.facebook.react.bridge.WritableArray;
+import com.facebook.react.bridge.WritableMap;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ScheduledFuture;
+
+import org.webrtc.PeerConnection;
+import org.webrtc.RTCStats;
+import org.webrtc.RTCStatsReport;
+
+/**
+ * Periodically samples the standard stats of the PeerConnections which have
+ * subscribed to it and delivers them to JavaScript as deltas i.e. only the
+ * members which have changed since the previous sample, along with rates
+ * derived from the counters (bitrates, packets lost per second, frames per
+ * second). All PeerConnections which are due for a sample are sampled in a
+ * single pass which results in a single <tt>peerConnectionStatsSampled</tt>
+ * event.
+ */
+class StatsSampler {
+    /**
+     * The counters from which rates are derived and the names of the rates
+     * (members of the <tt>rates</tt> object of a stats delta). Rates of byte
+     * counters are in bits per second, all others are per second.
+     */
+    private static final String[][] RATES = {
+        { "bytesSent", "bitrateSent" },
+        { "bytesReceived", "bitrateReceived" },
+        { "packetsLost", "packetsLostPerSecond" },
+        { "framesEncoded", "framesEncodedPerSecond" },
+        { "framesDecoded", "framesDecodedPerSecond" },
+    };
+
+    private final WebRTCModule webRTCModule;
+
+    /**
+     * The subscriptions mapped by PeerConnection ID. Guarded by {@code this}.
+     */
+    private final Map<Integer, Subscription> subscriptions = new HashMap<>();
+
+    /**
+     * The period of the sampling passes i.e. the shortest interval of the
+     * subscriptions. Guarded by {@code this}.
+     */
+    private long tickIntervalMs;
+
+    /**
+     * The next scheduled sampling pass. Guarded by {@code this}.
+     */
+    private ScheduledFuture<?> tickFuture;
+
+    StatsSampler(WebRTCModule webRTCModule) {
+        this.webRTCModule = webRTCModule;
+    }
+
+    /**
+     * Subscribes a PeerConnection to the sampling or changes the parameters
+     * of its existing subscription (in which case the next sample is a full
+     * one).
+     *
+     * @param id the ID of the PeerConnection
+     * @param intervalMs the number of milliseconds between samples. Intervals
+     * longer than the shortest interval of all subscriptions are rounded up to
+     * a multiple of the latter.
+     * @param types the types of the stats to sample or {@code null} to sample
+     * all types
+     */
+    synchronized void subscribe(
+            int id,
+            long intervalMs,
+            @Nullable Set<String> types) {
+        subscriptions.put(id, new Subscription(id, intervalMs, types));
+        reschedule();
+    }
+
+    synchronized void unsubscribe(int id) {
+        if (subscriptions.remove(id) != null) {
+            reschedule();
+        }
+    }
+
+    private void reschedule() {
+        long intervalMs = Long.MAX_VALUE;
+        for (Subscription subscription : subscriptions.values()) {
+            intervalMs = Math.min(intervalMs, subscription.intervalMs);
+        }
+        if (subscriptions.isEmpty()) {
+            intervalMs = 0;
+        }
+
+        if (intervalMs != tickIntervalMs) {
+            if (tickFuture != null) {
+                tickFuture.cancel(false);
+                tickFuture = null;
+            }
+            tickIntervalMs = intervalMs;
+            if (intervalMs > 0) {
+                tickFuture = ThreadUtils.schedule(this::tick, 0);
+            }
+        }
+    }
+
+    private void tick() {
+        List<Subscription> due = new ArrayList<>();
+        long intervalMs;
+
+        synchronized (this) {
+            if (tickIntervalMs == 0) {
+                return;
+            }
+            intervalMs = tickIntervalMs;
+            tickFuture = ThreadUtils.schedule(this::tick, intervalMs);
+
+            long now = SystemClock.elapsedRealtime();
+            for (Subscription subscription : subscriptions.values()) {
+                // Allow for the jitter of the timer (i.e. a tick which comes
+                // slightly early).
+                if (!subscription.inFlight
+                        && now + intervalMs / 2 >= subscription.nextSampleTime) {
+                    subscription.inFlight = true;
+                    subscription.nextSampleTime = now + subscription.intervalMs;
+                    due.add(subscription);
+                }
+            }
+        }
+
+        if (due.isEmpty()) {
+            return;
+        }
+
+        Pass pass = new Pass(due.size());
+        for (Subscription subscription : due) {
+            ThreadUtils.runOnExecutor(
+                subscription.id,
+                () -> sample(subscription, pass));
+        }
+        // Do not let a PeerConnection which does not report (in time) hold
+        // back the samples of the others.
+        ThreadUtils.schedule(pass::finish, intervalMs);
+    }
+
+    /**
+     * Samples the stats of the PeerConnection of a specific subscription. Runs
+     * on the executor lane of the PeerConnection.
+     */
+    private void sample(Subscription subscription, Pass pass) {
+        PeerConnection peerConnection
+            = webRTCModule.getPeerConnection(subscription.id);
+        if (peerConnection == null) {
+            pass.complete(subscription, null);
+            return;
+        }
+        peerConnection.getStats(report ->
+            ThreadUtils.runOnExecutor(subscription.id, () ->
+                pass.complete(subscription, subscription.encode(report))));
+    }
+
+    private void emit(List<Sample> samples) {
+        webRTCModule.sendEvent("peerConnectionStatsSampled", () -> {
+            WritableArray array = Arguments.createArray();
+            for (Sample sample : samples) {
+                WritableMap item = Arguments.createMap();
+                item.putInt("id", sample.id);
+                item.putString("data", sample.data);
+                array.pushMap(item);
+            }
+            WritableMap params = Arguments.createMap();
+            params.putArray("samples", array);
+            return params;
+        });
+    }
+
+    private static boolean valueEquals(Object a, Object b) {
+        if (a == b) {
+            return true;
+        }
+        if (a == null || b == null) {
+            return false;
+        }
+        if (a.getClass().isArray()) {
+            return Arrays.deepEquals(new Object[] { a }, new Object[] { b });
+        }
+        return a.equals(b);
+    }
+
+    /**
+     * A sampling pass i.e. the collection of the samples requested by a
+     * single tick.
+     */
+    private class Pass {
+        private int remaining;
+        private boolean finished;
+        private final List<Sample> samples = new ArrayList<>();
+
+        Pass(int count) {
+            remaining = count;
+        }
+
+        void complete(Subscription subscription, @Nullable String data) {
+            List<Sample> late = null;
+
+            synchronized (StatsSampler.this) {
+                subscription.inFlight = false;
+            }
+            synchronized (this) {
+                Sample sample = data == null ? null : new Sample(subscription.id, data);
+                if (finished) {
+                    // The pass has been delivered without this sample. Deliver
+                    // it on its own because the next delta builds on it.
+                    if (sample != null) {
+                        late = new ArrayList<>(1);
+                        late.add(sample);
+                    }
+                } else {
+                    if (sample != null) {
+                        samples.add(sample);
+                    }
+                    if (--remaining == 0) {
+                        finished = true;
+                        late = samples;
+                    }
+                }
+            }
+            if (late != null && !late.isEmpty()) {
+                emit(late);
+            }
+        }
+
+        void finish() {
+            synchronized (this) {
+                if (finished) {
+                    return;
+                }
+                finished = true;
+            }
+            if (!samples.isEmpty()) {
+                emit(samples);
+            }
+        }
+    }
+
+    private static class Sample {
+        final int id;
+        final String data;
+
+        Sample(int id, String data) {
+            this.id = id;
+            this.data = data;
+        }
+    }
+
+    private static class Subscription {
+        final int id;
+        final long intervalMs;
+        @Nullable
+        final Set<String> types;
+
+        /**
+         * Guarded by the {@code StatsSampler}.
+         */
+        long nextSampleTime;
+        boolean inFlight;
+
+        /**
+         * The stats of the previous sample mapped by ID. Accessed on the
+         * executor lane of the PeerConnection only.
+         */
+        private Map<String, RTCStats> previous = new HashMap<>();
+
+        Subscription(int id, long intervalMs, @Nullable Set<String> types) {
+            this.id = id;
+            this.intervalMs = intervalMs;
+            this.types = types;
+        }
+
+        /**
+         * Encodes the delta between a specific report and the previous one as
+         * JSON: <tt>{ stats: [...], removed: [...] }</tt> where every element
+         * of <tt>stats</tt> carries the <tt>id</tt>, <tt>type</tt> and
+         * <tt>timestamp</tt> of a stats object, its changed members and the
+         * <tt>rates</tt> derived from its counters. Stats objects which have
+         * not changed at all are left out. <tt>removed</tt> lists the IDs of
+         * the stats objects which are gone.
+         */
+        String encode(RTCStatsReport report) {
+            Map<String, RTCStats> current = new HashMap<>();
+            JSONWriter writer = JSONWriter.obtain();
+
+            try {
+                writer.beginObject().name("stats").beginArray();
+                for (RTCStats stats : report.getStatsMap().values()) {
+                    if (types != null && !types.contains(stats.getType())) {
+                        continue;
+                    }
+                    current.put(stats.getId(), stats);
+                    writeDelta(writer, stats, previous.get(stats.getId()));
+                }
+                writer.endArray();
+
+                writer.name("removed").beginArray();
+                for (String id : previous.keySet()) {
+                    if (!current.containsKey(id)) {
+                        writer.value(id);
+                    }
+                }
+                writer.endArray().endObject();
+
+                previous = current;
+
+                return writer.toString();
+            } finally {
+                writer.release();
+            }
+        }
+
+        /**
+         * Writes the delta between specific stats and their previous sample
+         * as an element of the current array or, if they have not changed,
+         * writes nothing.
+         */
+        private static void writeDelta(
+                JSONWriter writer,
+                RTCStats stats,
+                @Nullable RTCStats prev) {
+            Map<String, Object> prevMembers
+                = prev == null ? null : prev.getMembers();
+            int start = writer.length();
+            boolean needsComma = writer.needsComma();
+            boolean changed = false;
+
+            writer.beginObject();
+            StatsUtils.writeHeader(writer, stats);
+            for (Map.Entry<String, Object> member
+                    : stats.getMembers().entrySet()) {
+                String key = member.getKey();
+                Object value = member.getValue();
+                if (prevMembers == null
+                        || !valueEquals(value, prevMembers.get(key))) {
+                    writer.name(key).value(value);
+                    changed = true;
+                }
+            }
+            if (prev != null) {
+                changed |= writeRates(writer, stats, prev);
+            }
+            writer.endObject();
+
+            if (!changed) {
+                writer.truncate(start, needsComma);
+            }
+        }
+
+        private static boolean writeRates(
+                JSONWriter writer,
+                RTCStats stats,
+                RTCStats prev) {
+            double seconds
+                = (stats.getTimestampUs() - prev.getTimestampUs()) / 1000000;
+            if (seconds <= 0) {
+                return false;
+            }
+
+            boolean written = false;
+            for (String[] rate : RATES) {
+                Object value = stats.getMembers().get(rate[0]);
+                Object prevValue = prev.getMembers().get(rate[0]);
+                if (!(value instanceof Number && prevValue instanceof Number)) {
+                    continue;
+                }
+
+                double delta
+                    = ((Number) value).doubleValue()
+                        - ((Number) prevValue).doubleValue();
+                if (rate[0].startsWith("bytes")) {
+                    delta *= 8;
+                }
+
+                if (!written) {
+                    writer.name("rates").beginObject();
+                    written = true;
+                }
+                writer.name(rate[1]).value(delta / seconds);
+            }
+            if (written) {
+                writer.endObject();
+            }
+            return written;
+        }
+    }
+}
@@ -0,0 +1,134 @@
+package com.oney.WebRTCModule;
+
+import java.util.ArrayDeque;
+import java.util.Collection;
+import java.util.Deque;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+import org.webrtc.RTCStats;
+import org.webrtc.RTCStatsReport;
+
+/**
+ * Utilities for the standard stats (i.e. {@link RTCStatsReport}) produced by
+ * {@link org.webrtc.PeerConnection#getStats(org.webrtc.RTCStatsCollectorCallback)}.
+ */
+final class StatsUtils {
+    /**
+     * Selects the stats which describe the sending or the receiving of a
+     * specific track in the manner of the stats selection algorithm of the
+     * WebRTC specification: the <tt>outbound-rtp</tt> (respectively,
+     * <tt>inbound-rtp</tt>) stats of the track and all stats they reference
+     * directly or indirectly. Emulates <tt>getStats(RTCRtpSender)</tt> and
+     * <tt>getStats(RTCRtpReceiver)</tt> which the native API does not offer.
+     *
+     * @param report the stats of the whole PeerConnection
+     * @param trackId the ID of the track
+     * @param outbound <tt>true</tt> to select the stats of the sender of the
+     * track; <tt>false</tt> to select those of its receiver
+     * @return the selected stats
+     */
+    static Collection<RTCStats> select(
+            RTCStatsReport report,
+            String trackId,
+            boolean outbound) {
+        Map<String, RTCStats> statsMap = report.getStatsMap();
+        Map<String, RTCStats> selected = new LinkedHashMap<>();
+        Deque<RTCStats> pending = new ArrayDeque<>();
+        String rtpType = outbound ? "outbound-rtp" : "inbound-rtp";
+
+        for (RTCStats stats : statsMap.values()) {
+            if (rtpType.equals(stats.getType())
+                    && isOfTrack(statsMap, stats, trackId)) {
+                selected.put(stats.getId(), stats);
+                pending.add(stats);
+            }
+        }
+
+        // Follow the references (i.e. the members named *Id such as
+        // transportId, codecId, remoteId, localCandidateId).
+        RTCStats stats;
+        while ((stats = pending.poll()) != null) {
+            for (Map.Entry<String, Object> member
+                    : stats.getMembers().entrySet()) {
+                String ref = getReference(statsMap, member);
+                if (ref != null && !selected.containsKey(ref)) {
+                    RTCStats referenced = statsMap.get(ref);
+                    selected.put(ref, referenced);
+                    pending.add(referenced);
+                }
+            }
+        }
+
+        return selected.values();
+    }
+
+    /**
+     * Serializes stats into a JSON array of objects shaped like the
+     * dictionaries of the WebRTC Statistics API: <tt>id</tt>, <tt>type</tt>,
+     * <tt>timestamp</tt> (in milliseconds) and the members with their native
+     * types (i.e. numbers are numbers rather than strings).
+     */
+    static String toJSON(Collection<RTCStats> stats) {
+        JSONWriter writer = JSONWriter.obtain();
+        try {
+            writer.beginArray();
+            for (RTCStats st : stats) {
+                writer.beginObject();
+                writeHeader(writer, st);
+                for (Map.Entry<String, Object> member
+                        : st.getMembers().entrySet()) {
+                    writer.name(member.getKey()).value(member.getValue());
+                }
+                writer.endObject();
+            }
+            writer.endArray();
+            return writer.toString();
+        } finally {
+            writer.release();
+        }
+    }
+
+    /**
+     * Writes the <tt>id</tt>, <tt>type</tt> and <tt>timestamp</tt> (in
+     * milliseconds) members of the JSON representation of specific stats.
+     */
+    static void writeHeader(JSONWriter writer, RTCStats stats) {
+        writer.name("id").value(stats.getId())
+            .name("type").value(stats.getType())
+            .name("timestamp").value(stats.getTimestampUs() / 1000);
+    }
+
+    private static boolean isOfTrack(
+            Map<String, RTCStats> statsMap,
+            RTCStats stats,
+            String trackId) {
+        if (trackId.equals(stats.getMembers().get("trackIdentifier"))) {
+            return true;
+        }
+        // Depending on the version of the native library, the track is
+        // identified by the referenced track or media-source stats.
+        for (String key : new String[] { "trackId", "mediaSourceId" }) {
+            Object ref = stats.getMembers().get(key);
+            RTCStats referenced = ref == null ? null : statsMap.get(ref);
+            if (referenced != null
+                    && trackId.equals(
+                        referenced.getMembers().get("trackIdentifier"))) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private static String getReference(
+            Map<String, RTCStats> statsMap,
+            Map.Entry<String, Object> member) {
+        Object value = member.getValue();
+        if (value instanceof String
+                && member.getKey().endsWith("Id")
+                && statsMap.containsKey(value)) {
+            return (String) value;
+        }
+        return null;
+    }
+}
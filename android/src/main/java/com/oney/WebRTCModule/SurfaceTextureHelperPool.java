@@ -0,0 +1,141 @@
+package com.oney.WebRTCModule;
+
+import android.os.SystemClock;
+import android.support.annotation.Nullable;
+import android.util.Log;
+
+import java.util.ArrayDeque;
+import java.util.Deque;
+import java.util.Iterator;
+import java.util.concurrent.ScheduledFuture;
+
+import org.webrtc.EglBase;
+import org.webrtc.SurfaceTextureHelper;
+
+/**
+ * Keeps the {@link SurfaceTextureHelper}s (i.e. the capture threads along
+ * with their EGL contexts and textures) of the local video tracks which have
+ * been disposed of around so that the capturers of the next local video
+ * tracks (e.g. when the camera is toggled off and on) reuse them instead of
+ * starting new ones. A {@code SurfaceTextureHelper} delivers its frames to a
+ * single capturer at a time so the capturers which run simultaneously have
+ * their own. Idle helpers beyond {@link #MAX_SIZE} are disposed of right
+ * away and the rest after {@link #IDLE_TIMEOUT_MS}.
+ * <p>
+ * Confined to the global executor (see {@link ThreadUtils#runOnExecutor}).
+ */
+class SurfaceTextureHelperPool {
+    private static final String TAG = WebRTCModule.TAG;
+
+    /**
+     * The maximum number of idle helpers which are retained.
+     */
+    private static final int MAX_SIZE = 2;
+
+    /**
+     * The number of milliseconds after which an idle helper is disposed of.
+     */
+    private static final long IDLE_TIMEOUT_MS = 30 * 1000;
+
+    /**
+     * The idle helpers, the most recently recycled first.
+     */
+    private final Deque<IdleHelper> idle = new ArrayDeque<>();
+
+    /**
+     * The number of helpers created by this pool, for the purposes of
+     * naming their threads.
+     */
+    private int createdCount;
+
+    private ScheduledFuture<?> evictFuture;
+
+    /**
+     * Gets an idle helper from this pool or creates a new one.
+     *
+     * @return the helper or {@code null} if it could not be created
+     */
+    @Nullable
+    SurfaceTextureHelper acquire() {
+        IdleHelper idleHelper = idle.pollFirst();
+
+        if (idleHelper != null) {
+            if (idle.isEmpty()) {
+                cancelEvict();
+            }
+            return idleHelper.helper;
+        }
+
+        EglBase.Context eglContext = EglUtils.getRootEglBaseContext();
+
+        return SurfaceTextureHelper.create(
+            "CaptureThread-" + createdCount++,
+            eglContext);
+    }
+
+    /**
+     * Gives a helper back to this pool. The capturer which used the helper
+     * must have been stopped and disposed of.
+     */
+    void recycle(SurfaceTextureHelper helper) {
+        idle.addFirst(new IdleHelper(helper, SystemClock.elapsedRealtime()));
+        while (idle.size() > MAX_SIZE) {
+            idle.pollLast().helper.dispose();
+        }
+
+        cancelEvict();
+        scheduleEvict(IDLE_TIMEOUT_MS);
+    }
+
+    private void cancelEvict() {
+        if (evictFuture != null) {
+            evictFuture.cancel(false);
+            evictFuture = null;
+        }
+    }
+
+    private void scheduleEvict(long delayMs) {
+        evictFuture
+            = ThreadUtils.schedule(
+                () -> ThreadUtils.runOnExecutor(this::evict),
+                delayMs);
+    }
+
+    /**
+     * Disposes of the helpers which have been idle for at least
+     * {@link #IDLE_TIMEOUT_MS}.
+     */
+    private void evict() {
+        long now = SystemClock.elapsedRealtime();
+
+        evictFuture = null;
+        for (Iterator<IdleHelper> i = idle.descendingIterator(); i.hasNext();) {
+            IdleHelper idleHelper = i.next();
+            long idleMs = now - idleHelper.idleSince;
+
+            if (idleMs < IDLE_TIMEOUT_MS) {
+                // The rest have been recycled even later.
+                scheduleEvict(IDLE_TIMEOUT_MS - idleMs);
+                break;
+            }
+            i.remove();
+            idleHelper.helper.dispose();
+        }
+        Log.d(TAG, "SurfaceTextureHelperPool idle helpers: " + idle.size());
+    }
+
+    private static class IdleHelper {
+        final SurfaceTextureHelper helper;
+
+        /**
+         * The time (in {@link SystemClock#elapsedRealtime()} milliseconds)
+         * at which {@link #helper} was recycled.
+         */
+        final long idleSince;
+
+        IdleHelper(SurfaceTextureHelper helper, long idleSince) {
+            this.helper = helper;
+            this.idleSince = idleSince;
+        }
+    }
+}
@@ -0,0 +1,417 @@
+package com.oney.WebRTCModule;
+
+import android.content.Context;
+import android.os.Handler;
+import android.os.Looper;
+import android.os.SystemClock;
+import android.support.annotation.Nullable;
+import android.util.Log;
+
+import java.util.ArrayDeque;
+import java.util.Deque;
+import java.util.Iterator;
+
+import org.webrtc.EglBase;
+import org.webrtc.RendererCommon.RendererEvents;
+import org.webrtc.SurfaceViewRenderer;
+import org.webrtc.VideoFrame;
+import org.webrtc.VideoSink;
+
+/**
+ * Keeps initialized {@link SurfaceViewRenderer}s (i.e. with their render
+ * threads and EGL contexts) around after the {@link WebRTCView}s which used
+ * them have been detached so that the next {@code WebRTCView}s to be attached
+ * (e.g. the tiles of a scrolling list) do not have to go through
+ * {@link SurfaceViewRenderer#init} and {@link SurfaceViewRenderer#release}
+ * again. Idle renderers beyond {@link #maxSize} are released right away and
+ * the rest after {@link #idleTimeoutMs}.
+ * <p>
+ * Confined to the UI thread.
+ */
+class SurfaceViewRendererPool {
+    private static final String TAG = WebRTCModule.TAG;
+
+    /**
+     * The default maximum number of idle renderers which are retained.
+     */
+    static final int DEFAULT_MAX_SIZE = 4;
+
+    /**
+     * The default number of milliseconds after which an idle renderer is
+     * released.
+     */
+    static final long DEFAULT_IDLE_TIMEOUT_MS = 30 * 1000;
+
+    private final Handler handler = new Handler(Looper.getMainLooper());
+
+    /**
+     * The idle renderers, the most recently recycled first.
+     */
+    private final Deque<Renderer> idle = new ArrayDeque<>();
+
+    private final long idleTimeoutMs;
+
+    private final int maxSize;
+
+    private final Runnable evictRunnable = this::evict;
+
+    /**
+     * Initializes a new pool.
+     *
+     * @param maxSize the maximum number of idle renderers to retain. Zero
+     * disables pooling.
+     * @param idleTimeoutMs the number of milliseconds after which an idle
+     * renderer is released
+     */
+    SurfaceViewRendererPool(int maxSize, long idleTimeoutMs) {
+        this.maxSize = Math.max(0, maxSize);
+        this.idleTimeoutMs = idleTimeoutMs;
+    }
+
+    /**
+     * Gets an initialized renderer from this pool or initializes a new one.
+     *
+     * @param context the {@code Context} with which to create a new renderer
+     * @param events the listener of the rendering events of the renderer
+     * @return the renderer or {@code null} if the EGL infrastructure is not
+     * available
+     */
+    @Nullable
+    Renderer acquire(Context context, RendererEvents events) {
+        Renderer renderer = idle.pollFirst();
+
+        if (renderer == null) {
+            EglBase.Context sharedContext = EglUtils.getRootEglBaseContext();
+
+            if (sharedContext == null) {
+                // If SurfaceViewRenderer#init() is invoked, it will throw a
+                // RuntimeException which will very likely kill the application.
+                return null;
+            }
+
+            SurfaceViewRenderer view = new SurfaceViewRenderer(context);
+
+            // The rendering events are reported by Renderer because
+            // SurfaceViewRenderer reports the first frame only once per init.
+            view.init(sharedContext, null);
+            renderer = new Renderer(view);
+        } else if (idle.isEmpty()) {
+            handler.removeCallbacks(evictRunnable);
+        }
+
+        renderer.bind(events);
+        return renderer;
+    }
+
+    /**
+     * Gives a renderer back to this pool. The renderer must have been removed
+     * from its parent and from the video track it was rendering.
+     */
+    void recycle(Renderer renderer) {
+        renderer.bind(null);
+
+        if (maxSize == 0) {
+            renderer.view.release();
+            return;
+        }
+
+        // Do not show the last frame of the previous video track to the next
+        // WebRTCView.
+        renderer.view.clearImage();
+        renderer.view.disableFpsReduction();
+
+        renderer.idleSince = SystemClock.elapsedRealtime();
+        idle.addFirst(renderer);
+        while (idle.size() > maxSize) {
+            idle.pollLast().view.release();
+        }
+
+        handler.removeCallbacks(evictRunnable);
+        handler.postDelayed(evictRunnable, idleTimeoutMs);
+    }
+
+    /**
+     * Releases the renderers which have been idle for at least
+     * {@link #idleTimeoutMs}.
+     */
+    private void evict() {
+        long now = SystemClock.elapsedRealtime();
+
+        for (Iterator<Renderer> i = idle.descendingIterator(); i.hasNext();) {
+            Renderer renderer = i.next();
+            long idleMs = now - renderer.idleSince;
+
+            if (idleMs < idleTimeoutMs) {
+                // The rest have been recycled even later.
+                handler.postDelayed(evictRunnable, idleTimeoutMs - idleMs);
+                break;
+            }
+            i.remove();
+            renderer.view.release();
+        }
+        Log.d(TAG, "SurfaceViewRendererPool idle renderers: " + idle.size());
+    }
+
+    /**
+     * A pooled {@link SurfaceViewRenderer} along with the {@link VideoSink}
+     * which delivers the frames to it (and is to be added to the video
+     * track) and reports the rendering events of the {@code WebRTCView}
+     * currently using it. The sink also enforces the render caps of the
+     * {@code WebRTCView}: it drops the frames which exceed the maximum frame
+     * rate and downscales the frames which exceed the maximum size before
+     * they reach the {@code SurfaceViewRenderer} (i.e. before they are
+     * uploaded and drawn).
+     */
+    static class Renderer implements VideoSink {
+        final SurfaceViewRenderer view;
+
+        private volatile RendererEvents events;
+
+        /**
+         * The minimum interval between the frames to render. Zero renders
+         * all frames.
+         */
+        private volatile long minFrameIntervalNs;
+
+        /**
+         * The maximum size of the frames (as displayed i.e. rotated) to
+         * render. Zero means no limit.
+         */
+        private volatile int maxHeight;
+        private volatile int maxWidth;
+
+        /**
+         * The time (in {@link System#nanoTime()}) before which frames are
+         * dropped. Accessed on the thread which delivers the frames.
+         */
+        private long nextFrameTimeNs;
+
+        /**
+         * Whether the rendering is paused (e.g. because the
+         * {@code WebRTCView} is not visible) and the frame to render upon
+         * resume. Guarded by {@code this}.
+         */
+        private boolean paused;
+        private VideoFrame pausedFrame;
+
+        /**
+         * The state of the reporting of the rendering events. Guarded by
+         * {@code this}.
+         */
+        private boolean firstFrameRendered;
+        private int frameHeight;
+        private int frameRotation;
+        private int frameWidth;
+
+        /**
+         * The time (in {@link SystemClock#elapsedRealtime()} milliseconds)
+         * at which this renderer was last recycled.
+         */
+        private long idleSince;
+
+        Renderer(SurfaceViewRenderer view) {
+            this.view = view;
+        }
+
+        private synchronized void bind(RendererEvents events) {
+            this.events = events;
+            firstFrameRendered = false;
+            frameHeight = frameRotation = frameWidth = 0;
+            setMaxFrameRate(0);
+            setMaxRenderSize(0, 0);
+            paused = false;
+            releasePausedFrame();
+        }
+
+        /**
+         * Sets the maximum number of frames per second to render. Zero or
+         * less renders all frames.
+         */
+        void setMaxFrameRate(float maxFrameRate) {
+            minFrameIntervalNs
+                = maxFrameRate > 0 ? (long) (1e9 / maxFrameRate) : 0;
+        }
+
+        /**
+         * Sets the maximum size (in pixels, as displayed) of the frames to
+         * render. Larger frames are downscaled preserving their aspect
+         * ratio. Zero or less means no limit (in the respective dimension).
+         */
+        void setMaxRenderSize(int maxWidth, int maxHeight) {
+            this.maxWidth = Math.max(0, maxWidth);
+            this.maxHeight = Math.max(0, maxHeight);
+        }
+
+        @Override
+        public void onFrame(VideoFrame frame) {
+            long minFrameIntervalNs = this.minFrameIntervalNs;
+
+            if (minFrameIntervalNs > 0) {
+                long now = System.nanoTime();
+
+                if (now < nextFrameTimeNs) {
+                    return;
+                }
+                // Keep the cadence of the frames which are rendered regular
+                // (rather than relative to the arrival of each) but do not
+                // let a gap cause a burst afterwards.
+                nextFrameTimeNs += minFrameIntervalNs;
+                if (nextFrameTimeNs < now) {
+                    nextFrameTimeNs = now + minFrameIntervalNs;
+                }
+            }
+
+            synchronized (this) {
+                if (paused) {
+                    keepPausedFrame(frame);
+                } else {
+                    scaleAndRender(frame);
+                }
+            }
+        }
+
+        /**
+         * Pauses/resumes the rendering. While paused, the frames are not
+         * delivered to the {@code SurfaceViewRenderer} (i.e. not uploaded
+         * and drawn) but the latest one is kept (if that is cheap) and
+         * rendered upon resume.
+         */
+        synchronized void setPaused(boolean paused) {
+            if (this.paused == paused) {
+                return;
+            }
+            this.paused = paused;
+
+            VideoFrame frame = pausedFrame;
+
+            if (!paused && frame != null) {
+                pausedFrame = null;
+                try {
+                    scaleAndRender(frame);
+                } finally {
+                    frame.release();
+                }
+            }
+        }
+
+        /**
+         * Keeps a specific frame (instead of the previously kept one) to be
+         * rendered upon resume. Texture frames are not kept because the
+         * decoders and capturers have a limited number of textures and do
+         * not produce further frames (for any sink of the track) until they
+         * get them back; the next frame after the resume is awaited instead.
+         */
+        private void keepPausedFrame(VideoFrame frame) {
+            releasePausedFrame();
+            if (!(frame.getBuffer() instanceof VideoFrame.TextureBuffer)) {
+                frame.retain();
+                pausedFrame = frame;
+            }
+        }
+
+        private void releasePausedFrame() {
+            if (pausedFrame != null) {
+                pausedFrame.release();
+                pausedFrame = null;
+            }
+        }
+
+        private void scaleAndRender(VideoFrame frame) {
+            VideoFrame scaledFrame = scale(frame);
+
+            if (scaledFrame == null) {
+                render(frame);
+            } else {
+                try {
+                    render(scaledFrame);
+                } finally {
+                    scaledFrame.release();
+                }
+            }
+        }
+
+        /**
+         * Downscales a specific frame to the maximum render size.
+         *
+         * @return the downscaled frame (which is to be released by the
+         * caller) or {@code null} if the frame does not exceed the maximum
+         * render size
+         */
+        private VideoFrame scale(VideoFrame frame) {
+            int maxWidth = this.maxWidth;
+            int maxHeight = this.maxHeight;
+
+            if (maxWidth == 0 && maxHeight == 0) {
+                return null;
+            }
+
+            // The maximum size is of the frame as displayed.
+            if (frame.getRotation() % 180 != 0) {
+                int swap = maxWidth;
+                maxWidth = maxHeight;
+                maxHeight = swap;
+            }
+
+            VideoFrame.Buffer buffer = frame.getBuffer();
+            int width = buffer.getWidth();
+            int height = buffer.getHeight();
+            float scale = 1;
+
+            if (maxWidth > 0 && width > maxWidth) {
+                scale = maxWidth / (float) width;
+            }
+            if (maxHeight > 0 && height * scale > maxHeight) {
+                scale = maxHeight / (float) height;
+            }
+            if (scale >= 1) {
+                return null;
+            }
+
+            // I420 requires even dimensions.
+            int scaledWidth = Math.max(2, Math.round(width * scale) & ~1);
+            int scaledHeight = Math.max(2, Math.round(height * scale) & ~1);
+
+            return new VideoFrame(
+                buffer.cropAndScale(
+                    0, 0, width, height,
+                    scaledWidth, scaledHeight),
+                frame.getRotation(),
+                frame.getTimestampNs());
+        }
+
+        private void render(VideoFrame frame) {
+            view.onFrame(frame);
+
+            RendererEvents events = this.events;
+
+            if (events == null) {
+                return;
+            }
+
+            VideoFrame.Buffer buffer = frame.getBuffer();
+            int width = buffer.getWidth();
+            int height = buffer.getHeight();
+            int rotation = frame.getRotation();
+            boolean first;
+            boolean changed;
+
+            synchronized (this) {
+                first = !firstFrameRendered;
+                firstFrameRendered = true;
+                changed
+                    = width != frameWidth
+                        || height != frameHeight
+                        || rotation != frameRotation;
+                frameWidth = width;
+                frameHeight = height;
+                frameRotation = rotation;
+            }
+            if (first) {
+                events.onFirstFrameRendered();
+            }
+            if (changed) {
+                events.onFrameResolutionChanged(width, height, rotation);
+            }
+        }
+    }
+}
@@ -1,22 +1,148 @@
 package com.oney.WebRTCModule;
 
+import android.util.Log;
+
+import java.util.concurrent.ExecutionException;
 import java.util.concurrent.ExecutorService;
 import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
 
 final class ThreadUtils {
     /**
-     * Thread which will be used to call all WebRTC PeerConnection APIs. They
-     * they don't run on the calling thread anyway, we are deferring the calls
-     * to this thread to avoid (potentially) blocking the calling thread.
+     * The {@link Log} tag with which {@code ThreadUtils} is to log.
+     */
+    private static final String TAG = WebRTCModule.TAG;
+
+    /**
+     * Thread which will be used to call all WebRTC APIs which are not
+     * specific to a single PeerConnection (e.g. getUserMedia, MediaStream
+     * management, PeerConnectionFactory initialization). They don't run on
+     * the calling thread anyway, we are deferring the calls to this thread to
+     * avoid (potentially) blocking the calling thread.
      */
     private static final ExecutorService executor
-        = Executors.newSingleThreadExecutor();
+        = Executors.newSingleThreadExecutor(r -> new Thread(r, "WebRTCModule-global"));
+
+    /**
+     * The number of lanes across which PeerConnection-specific operations are
+     * striped. Operations on the same PeerConnection always land on the same
+     * lane (and thus execute in order) while operations on different
+     * PeerConnections may execute in parallel.
+     */
+    private static final int PEER_CONNECTION_LANE_COUNT
+        = Math.max(2, Math.min(Runtime.getRuntime().availableProcessors(), 8));
+
+    /**
+     * The lanes (i.e. single-threaded executors) on which PeerConnection
+     * APIs are called. Created lazily by {@link #getPeerConnectionLane(int)}.
+     */
+    private static final ExecutorService[] peerConnectionLanes
+        = new ExecutorService[PEER_CONNECTION_LANE_COUNT];
 
     /**
-     * Runs the given {@link Runnable} on the executor.
+     * Thread which runs the (short) delayed tasks of the module such as the
+     * flushing of batched ICE candidates.
+     */
+    private static final ScheduledExecutorService scheduler
+        = Executors.newSingleThreadScheduledExecutor(r -> new Thread(r, "WebRTCModule-timer"));
+
+    /**
+     * Runs the given {@link Runnable} on the global executor i.e. the one
+     * shared by all operations which are not specific to a PeerConnection.
      * @param runnable
      */
     public static void runOnExecutor(Runnable runnable) {
         executor.execute(runnable);
     }
+
+    /**
+     * Runs the given {@link Runnable} on the executor lane of a specific
+     * PeerConnection. Runnables submitted for the same PeerConnection execute
+     * in submission order.
+     *
+     * @param peerConnectionId the ID of the PeerConnection the specified
+     * {@code runnable} operates on
+     * @param runnable
+     */
+    public static void runOnExecutor(int peerConnectionId, Runnable runnable) {
+        getPeerConnectionLane(peerConnectionId).execute(runnable);
+    }
+
+    /**
+     * Runs the given {@link Runnable} on the executor lane of a specific
+     * PeerConnection after all runnables submitted to the global executor
+     * prior to this call have completed. Meant for PeerConnection operations
+     * which depend on global state such as local MediaStreams or the
+     * PeerConnectionFactory. The global executor never waits for a
+     * PeerConnection lane so this cannot deadlock.
+     *
+     * @param peerConnectionId the ID of the PeerConnection the specified
+     * {@code runnable} operates on
+     * @param runnable
+     */
+    public static void runOnExecutorAfterGlobal(
+            int peerConnectionId,
+            Runnable runnable) {
+        Future<?> barrier = executor.submit(() -> {});
+
+        runOnExecutor(peerConnectionId, () -> {
+            awaitUninterruptibly(barrier);
+            runnable.run();
+        });
+    }
+
+    /**
+     * Runs the given {@link Runnable} on the shared timer thread after a
+     * specific delay. The runnable is expected to be short; longer work should
+     * be handed over to one of the executors.
+     *
+     * @param runnable
+     * @param delayMs the delay in milliseconds
+     * @return a {@code ScheduledFuture} which may be used to cancel the
+     * execution of the specified {@code runnable}
+     */
+    public static ScheduledFuture<?> schedule(Runnable runnable, long delayMs) {
+        return scheduler.schedule(runnable, delayMs, TimeUnit.MILLISECONDS);
+    }
+
+    private static void awaitUninterruptibly(Future<?> future) {
+        boolean interrupted = false;
+
+        try {
+            while (true) {
+                try {
+                    future.get();
+                    break;
+                } catch (InterruptedException e) {
+                    interrupted = true;
+                } catch (ExecutionException e) {
+                    Log.e(TAG, "Global executor barrier failed", e);
+                    break;
+                }
+            }
+        } finally {
+            if (interrupted) {
+                Thread.currentThread().interrupt();
+            }
+        }
+    }
+
+    private static ExecutorService getPeerConnectionLane(int peerConnectionId) {
+        int index = Math.abs(peerConnectionId % PEER_CONNECTION_LANE_COUNT);
+
+        synchronized (peerConnectionLanes) {
+            ExecutorService lane = peerConnectionLanes[index];
+
+            if (lane == null) {
+                String name = "WebRTCModule-pc-" + index;
+
+                lane = Executors.newSingleThreadExecutor(r -> new Thread(r, name));
+                peerConnectionLanes[index] = lane;
+            }
+            return lane;
+        }
+    }
 }
@@ -0,0 +1,307 @@
+package com.oney.WebRTCModule;
+
+import android.os.SystemClock;
+import android.util.Log;
+
+import com.facebook.react.bridge.ReadableMap;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.atomic.AtomicReference;
+
+import org.webrtc.CapturerObserver;
+import org.webrtc.SurfaceTextureHelper;
+import org.webrtc.VideoFrame;
+import org.webrtc.VideoSource;
+
+/**
+ * A camera capture along with the {@link VideoSource}s it feeds: the one it
+ * has been started with and those of the clones of the local video track
+ * created from the latter (which adapt, i.e. downscale, the frames to their
+ * own constraints). The camera is opened once, captures while any of the
+ * sources is enabled and is released along with the last source.
+ * <p>
+ * Also carries the state of the prewarming of the capture (if it has been
+ * started by {@code mediaDevicesPrewarm}).
+ * <p>
+ * Confined to the global executor (see {@link ThreadUtils#runOnExecutor})
+ * except for the delivery of the frames.
+ */
+class VideoCapture implements CapturerObserver {
+    private static final String TAG = WebRTCModule.TAG;
+
+    /**
+     * The (normalized) video constraints with which the capture has been
+     * started.
+     */
+    final HashMap<String, Object> constraints;
+
+    final SurfaceTextureHelper surfaceTextureHelper;
+
+    final VideoCaptureController videoCaptureController;
+
+    /**
+     * The source with which the capture has been started.
+     */
+    final VideoSource videoSource;
+
+    /**
+     * The observers of the sources to which the frames are delivered.
+     * Guarded by itself.
+     */
+    private final List<CapturerObserver> capturerObservers = new ArrayList<>();
+
+    /**
+     * Whether the capturer has reported that it started (so that the sources
+     * which are added afterwards are told so too). Guarded by
+     * {@link #capturerObservers}.
+     */
+    private boolean capturerStarted;
+
+    /**
+     * Whether {@link #videoCaptureController} is capturing. Written on the
+     * global executor only.
+     */
+    private volatile boolean capturing;
+
+    private final Set<VideoSource> disabledSources = new HashSet<>();
+
+    private final List<VideoSource> sources = new ArrayList<>();
+
+    /**
+     * The times (in {@link SystemClock#elapsedRealtime()} milliseconds) at
+     * which the capture was started and at which its first frame was captured
+     * (or zero).
+     */
+    final long startTime;
+    volatile long firstFrameTime;
+
+    /**
+     * The task to run (once) when the next frame is captured or
+     * {@code null}. Taken (i.e. cleared) by whoever settles it so that it
+     * is either run or cancelled exactly once.
+     */
+    private final AtomicReference<NextFrameTask> nextFrameTask
+        = new AtomicReference<>();
+
+    /**
+     * The number of milliseconds it took to start the capture.
+     */
+    long startUpMs;
+
+    /**
+     * The expiry of the prewarmed capture.
+     */
+    ScheduledFuture<?> expiry;
+
+    VideoCapture(
+            ReadableMap constraints,
+            VideoCaptureController videoCaptureController,
+            SurfaceTextureHelper surfaceTextureHelper,
+            VideoSource videoSource,
+            long startTime) {
+        this.constraints = constraints.toHashMap();
+        this.videoCaptureController = videoCaptureController;
+        this.surfaceTextureHelper = surfaceTextureHelper;
+        this.videoSource = videoSource;
+        this.startTime = startTime;
+
+        sources.add(videoSource);
+        capturerObservers.add(videoSource.getCapturerObserver());
+    }
+
+    /**
+     * Starts capturing. The capturer must have been initialized with this
+     * instance as its {@code CapturerObserver}.
+     */
+    void start() {
+        updateCapturing();
+    }
+
+    /**
+     * Starts delivering the frames to a specific source.
+     */
+    void addSource(VideoSource source, boolean enabled) {
+        CapturerObserver capturerObserver = source.getCapturerObserver();
+
+        sources.add(source);
+        if (!enabled) {
+            disabledSources.add(source);
+        }
+        synchronized (capturerObservers) {
+            capturerObservers.add(capturerObserver);
+            if (capturerStarted) {
+                capturerObserver.onCapturerStarted(true);
+            }
+        }
+        updateCapturing();
+    }
+
+    /**
+     * Stops delivering the frames to a specific source. The source may be
+     * disposed of afterwards. Releases the camera along with the last
+     * source.
+     *
+     * @param surfaceTextureHelperPool the pool to give
+     * {@link #surfaceTextureHelper} back to if the camera is released
+     */
+    void removeSource(
+            VideoSource source,
+            SurfaceTextureHelperPool surfaceTextureHelperPool) {
+        if (!sources.remove(source)) {
+            return;
+        }
+        disabledSources.remove(source);
+        synchronized (capturerObservers) {
+            capturerObservers.remove(source.getCapturerObserver());
+        }
+
+        if (sources.isEmpty()) {
+            if (videoCaptureController.stopCapture()) {
+                videoCaptureController.dispose();
+                surfaceTextureHelperPool.recycle(surfaceTextureHelper);
+            } else {
+                Log.w(TAG, "Failed to stop the capturer, leaking it");
+            }
+            capturing = false;
+            cancelNextFrameTask("The capture has been stopped");
+        } else {
+            updateCapturing();
+        }
+    }
+
+    /**
+     * Enables/disables a specific source. The camera captures while any of
+     * the sources is enabled.
+     */
+    void setSourceEnabled(VideoSource source, boolean enabled) {
+        if (!sources.contains(source)) {
+            return;
+        }
+        if (enabled) {
+            disabledSources.remove(source);
+        } else {
+            disabledSources.add(source);
+        }
+        updateCapturing();
+    }
+
+    /**
+     * Whether the camera is capturing i.e. any of the sources is enabled.
+     */
+    boolean isCapturing() {
+        return capturing;
+    }
+
+    /**
+     * Runs a specific task (once, on the thread which delivers the frames)
+     * when the next frame is captured. Cancels a previous task which has not
+     * run yet. The task is cancelled instead of run if the capturer fails to
+     * start, if the capture is stopped or if no frame is captured within a
+     * specific time.
+     *
+     * @param timeoutMs the number of milliseconds after which the task is
+     * cancelled if no frame has been captured
+     */
+    void runOnNextFrame(NextFrameTask task, long timeoutMs) {
+        NextFrameTask previous = nextFrameTask.getAndSet(task);
+
+        if (previous != null) {
+            previous.cancel("Superseded by a later task");
+        }
+        ThreadUtils.schedule(() -> {
+            if (nextFrameTask.compareAndSet(task, null)) {
+                task.cancel("No frame captured in " + timeoutMs + " ms");
+            }
+        }, timeoutMs);
+    }
+
+    private void cancelNextFrameTask(String reason) {
+        NextFrameTask task = nextFrameTask.getAndSet(null);
+
+        if (task != null) {
+            task.cancel(reason);
+        }
+    }
+
+    private void updateCapturing() {
+        boolean capturing = disabledSources.size() < sources.size();
+
+        if (this.capturing != capturing) {
+            this.capturing = capturing;
+            if (capturing) {
+                videoCaptureController.startCapture();
+            } else {
+                videoCaptureController.stopCapture();
+                // No frame is coming so there is nothing to wait for.
+                NextFrameTask task = nextFrameTask.getAndSet(null);
+                if (task != null) {
+                    task.run();
+                }
+            }
+        }
+    }
+
+    @Override
+    public void onCapturerStarted(boolean success) {
+        synchronized (capturerObservers) {
+            capturerStarted = success;
+            for (CapturerObserver capturerObserver : capturerObservers) {
+                capturerObserver.onCapturerStarted(success);
+            }
+        }
+        if (!success) {
+            cancelNextFrameTask("The capturer failed to start");
+        }
+    }
+
+    @Override
+    public void onCapturerStopped() {
+        synchronized (capturerObservers) {
+            capturerStarted = false;
+            for (CapturerObserver capturerObserver : capturerObservers) {
+                capturerObserver.onCapturerStopped();
+            }
+        }
+    }
+
+    @Override
+    public void onFrameCaptured(VideoFrame frame) {
+        if (firstFrameTime == 0) {
+            firstFrameTime = SystemClock.elapsedRealtime();
+        }
+
+        // A plain read first so that the frames do not pay for the atomic
+        // update while there is no task.
+        if (nextFrameTask.get() != null) {
+            NextFrameTask task = nextFrameTask.getAndSet(null);
+            if (task != null) {
+                task.run();
+            }
+        }
+
+        // Each source adapts (i.e. crops/scales) the frame to its own output
+        // format lazily (and texture frames on the GPU) so the frame is not
+        // copied here.
+        synchronized (capturerObservers) {
+            for (CapturerObserver capturerObserver : capturerObservers) {
+                capturerObserver.onFrameCaptured(frame);
+            }
+        }
+    }
+
+    /**
+     * A task which is run when the next frame is captured or cancelled if
+     * that is not going to happen. Exactly one of the two methods is invoked
+     * and only once.
+     */
+    interface NextFrameTask {
+        void run();
+
+        void cancel(String reason);
+    }
+}
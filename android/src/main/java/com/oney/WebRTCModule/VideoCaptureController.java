@@ -1,14 +1,21 @@
 package com.oney.WebRTCModule;
 
+import android.content.Context;
 import android.util.Log;
 
+import com.facebook.react.bridge.Arguments;
 import com.facebook.react.bridge.ReadableMap;
+import com.facebook.react.bridge.WritableMap;
 
+import org.webrtc.CameraEnumerationAndroid.CaptureFormat;
 import org.webrtc.CameraEnumerator;
 import org.webrtc.CameraVideoCapturer;
+import org.webrtc.CapturerObserver;
+import org.webrtc.SurfaceTextureHelper;
 import org.webrtc.VideoCapturer;
 
 import java.util.ArrayList;
+import java.util.Collections;
 import java.util.List;
 
 public class VideoCaptureController {
@@ -21,14 +28,39 @@ public class VideoCaptureController {
     private boolean isFrontFacing;
 
     /**
-     * Values for width, height and fps (respectively) which will be
-     * used to open the camera at.
+     * The width, height and frame rate constraints with which the camera is
+     * opened (or which have been applied afterwards).
      */
-    private final int width;
-    private final int height;
-    private final int fps;
+    private VideoConstraints constraints;
 
-    private CameraEnumerator cameraEnumerator;
+    /**
+     * The size and frame rate (as a fixed range) at which the camera is
+     * opened, selected to satisfy {@link #constraints} best.
+     */
+    private CaptureFormat captureFormat;
+
+    /**
+     * The name of the camera from which {@link #videoCapturer} captures.
+     */
+    private String deviceName;
+
+    /**
+     * Whether {@link #videoCapturer} has been started (and not stopped).
+     */
+    private boolean capturing;
+
+    /**
+     * The arguments with which {@link #videoCapturer} has been initialized.
+     */
+    private Context applicationContext;
+    private CapturerObserver capturerObserver;
+    private SurfaceTextureHelper surfaceTextureHelper;
+
+    /**
+     * The cameras of the device which are (re)queried from the
+     * {@link CameraEnumerator} only when they change.
+     */
+    private final CameraInfoCache cameraInfoCache;
 
     /**
      * The {@link CameraEventsHandler} used with
@@ -44,12 +76,10 @@ public class VideoCaptureController {
      */
     private VideoCapturer videoCapturer;
 
-    public VideoCaptureController(CameraEnumerator cameraEnumerator, ReadableMap constraints) {
-        this.cameraEnumerator = cameraEnumerator;
+    public VideoCaptureController(CameraInfoCache cameraInfoCache, ReadableMap constraints) {
+        this.cameraInfoCache = cameraInfoCache;
 
-        width = constraints.getInt("width");
-        height = constraints.getInt("height");
-        fps = constraints.getInt("frameRate");
+        this.constraints = new VideoConstraints(constraints);
 
         String deviceId = ReactBridgeUtil.getMapStrValue(constraints, "deviceId");
         String facingMode = ReactBridgeUtil.getMapStrValue(constraints, "facingMode");
@@ -68,9 +98,31 @@ public class VideoCaptureController {
         return videoCapturer;
     }
 
+    /**
+     * Initializes {@link #videoCapturer} (and the capturers which replace it
+     * when switching cameras).
+     */
+    public void initialize(
+            SurfaceTextureHelper surfaceTextureHelper,
+            Context applicationContext,
+            CapturerObserver capturerObserver) {
+        this.surfaceTextureHelper = surfaceTextureHelper;
+        this.applicationContext = applicationContext;
+        this.capturerObserver = capturerObserver;
+
+        videoCapturer.initialize(
+            surfaceTextureHelper,
+            applicationContext,
+            capturerObserver);
+    }
+
     public void startCapture() {
+        capturing = true;
         try {
-            videoCapturer.startCapture(width, height, fps);
+            videoCapturer.startCapture(
+                captureFormat.width,
+                captureFormat.height,
+                captureFormat.framerate.max / 1000);
         } catch (RuntimeException e) {
             // XXX This can only fail if we initialize the capturer incorrectly,
             // which we don't. Thus, ignore any failures here since we trust
@@ -78,7 +130,84 @@ public class VideoCaptureController {
         }
     }
 
+    /**
+     * Gets the settings (as defined by the W3C Media Capture and Streams
+     * specification) with which {@link #videoCapturer} captures.
+     */
+    public WritableMap getSettings() {
+        WritableMap settings = Arguments.createMap();
+        boolean portrait = constraints.isPortrait();
+
+        settings.putString("deviceId", deviceName);
+        settings.putString("facingMode", isFrontFacing ? "user" : "environment");
+        settings.putInt("frameRate", captureFormat.framerate.max / 1000);
+        settings.putInt(
+            "height",
+            portrait ? captureFormat.width : captureFormat.height);
+        settings.putInt(
+            "width",
+            portrait ? captureFormat.height : captureFormat.width);
+
+        return settings;
+    }
+
+    /**
+     * Retunes the capture to new constraints. The format (i.e. size and
+     * frame rate) which satisfies them best is selected as at the start of
+     * the capture. If the current capture format can be downscaled to it
+     * (e.g. 720p30 to 360p15), the camera is not touched at all and the
+     * source which it feeds is to adapt the frames instead, which takes
+     * effect with the next frame. Otherwise, the camera is asked to change
+     * its capture format, which restarts its capture session.
+     *
+     * @param constraints the (normalized) new constraints. The missing ideal
+     * values are inherited from the current constraints.
+     * @return the selected format (to which the source is to adapt the
+     * captured frames) with the frame rate as a fixed range
+     */
+    public CaptureFormat applyConstraints(ReadableMap constraints) {
+        VideoConstraints newConstraints
+            = new VideoConstraints(constraints, this.constraints);
+        CameraInfoCache.CameraInfo camera
+            = cameraInfoCache.getCamera(deviceName);
+        CaptureFormat format
+            = newConstraints.selectFormat(
+                camera == null
+                    ? Collections.<CaptureFormat>emptyList()
+                    : cameraInfoCache.getFormats(camera));
+
+        this.constraints = newConstraints;
+        if (format.width <= captureFormat.width
+                && format.height <= captureFormat.height
+                && format.framerate.max <= captureFormat.framerate.max) {
+            Log.d(TAG, "applyConstraints: adapting " + captureFormat
+                + " to " + format);
+        } else {
+            Log.d(TAG, "applyConstraints: changing the capture format from "
+                + captureFormat + " to " + format);
+            captureFormat = format;
+            // A stopped capturer is started with the new format later on.
+            if (capturing) {
+                videoCapturer.changeCaptureFormat(
+                    format.width,
+                    format.height,
+                    format.framerate.max / 1000);
+            }
+        }
+
+        return format;
+    }
+
+    /**
+     * Whether the constraints are for a portrait video i.e. the width and
+     * height of the formats are swapped when they are reported.
+     */
+    public boolean isPortrait() {
+        return constraints.isPortrait();
+    }
+
     public boolean stopCapture() {
+        capturing = false;
         try {
             videoCapturer.stopCapture();
             return true;
@@ -87,66 +216,126 @@ public class VideoCaptureController {
         }
     }
 
-    public void switchCamera() {
-        if (videoCapturer instanceof CameraVideoCapturer) {
-            CameraVideoCapturer capturer = (CameraVideoCapturer) videoCapturer;
-            String[] deviceNames = cameraEnumerator.getDeviceNames();
-            int deviceCount = deviceNames.length;
+    /**
+     * Switches straight to a specific camera (as opposed to cycling through
+     * the cameras until the facing matches, which opens each of them in
+     * turn) using the cached facing of the cameras.
+     *
+     * @param deviceId the name (or the index, as reported by
+     * {@code enumerateDevices}) of the camera to switch to. If {@code null},
+     * {@code facingMode} is used.
+     * @param facingMode the facing ({@code user} or {@code environment}) of
+     * the camera to switch to. If {@code null} (as well as {@code deviceId}),
+     * the facing opposite to the current one is presumed.
+     * @param switchHandler notified when the switch is done (or fails)
+     */
+    public void switchCamera(
+            String deviceId,
+            String facingMode,
+            CameraVideoCapturer.CameraSwitchHandler switchHandler) {
+        List<CameraInfoCache.CameraInfo> cameras = cameraInfoCache.getCameras();
+        CameraInfoCache.CameraInfo target = null;
+
+        if (deviceId != null) {
+            for (int i = 0; i < cameras.size(); ++i) {
+                CameraInfoCache.CameraInfo camera = cameras.get(i);
 
-            // Nothing to switch to.
-            if (deviceCount < 2) {
-                return;
+                if (camera.name.equals(deviceId)
+                        || String.valueOf(i).equals(deviceId)) {
+                    target = camera;
+                    break;
+                }
             }
+        } else {
+            boolean frontFacing
+                = facingMode == null
+                    ? !isFrontFacing
+                    : !facingMode.equals("environment");
+
+            for (CameraInfoCache.CameraInfo camera : cameras) {
+                if (camera.frontFacing != null
+                        && camera.frontFacing == frontFacing
+                        && (target == null || camera.name.equals(deviceName))) {
+                    // Prefer the current camera if it matches already.
+                    target = camera;
+                }
+            }
+        }
+
+        if (target == null) {
+            switchHandler.onCameraSwitchError("No camera matches");
+            return;
+        }
+        if (target.name.equals(deviceName)) {
+            switchHandler.onCameraSwitchDone(isFrontFacing);
+            return;
+        }
+
+        CameraInfoCache.CameraInfo camera = target;
 
-            // The usual case.
-            if (deviceCount == 2) {
-                capturer.switchCamera(new CameraVideoCapturer.CameraSwitchHandler() {
+        // With two cameras the capturer switches to the other one on its own
+        // (reusing its camera thread) but only while it is running.
+        if (capturing
+                && cameras.size() == 2
+                && videoCapturer instanceof CameraVideoCapturer) {
+            ((CameraVideoCapturer) videoCapturer).switchCamera(
+                new CameraVideoCapturer.CameraSwitchHandler() {
                     @Override
-                    public void onCameraSwitchDone(boolean b) {
-                        isFrontFacing = b;
+                    public void onCameraSwitchDone(boolean frontFacing) {
+                        // Invoked on the camera thread but the state of the
+                        // controller is confined to the global executor.
+                        ThreadUtils.runOnExecutor(() -> {
+                            isFrontFacing = frontFacing;
+                            deviceName = camera.name;
+                            switchHandler.onCameraSwitchDone(frontFacing);
+                        });
                     }
 
                     @Override
-                    public void onCameraSwitchError(String s) {
-                        Log.e(TAG, "Error switching camera: " + s);
+                    public void onCameraSwitchError(String error) {
+                        Log.e(TAG, "Error switching camera: " + error);
+                        ThreadUtils.runOnExecutor(
+                            () -> switchHandler.onCameraSwitchError(error));
                     }
                 });
-                return;
-            }
+            return;
+        }
 
-            // If we are here the device has more than 2 cameras. Cycle through them
-            // and switch to the first one of the desired facing mode.
-            switchCamera(!isFrontFacing, deviceCount);
+        // Otherwise, replace the capturer with one for the target camera.
+        VideoCapturer newVideoCapturer
+            = cameraInfoCache.getCameraEnumerator().createCapturer(
+                camera.name, cameraEventsHandler);
+        if (newVideoCapturer == null) {
+            switchHandler.onCameraSwitchError(
+                "Failed to create a capturer for camera " + camera.name);
+            return;
         }
-    }
 
-    /**
-     * Helper function which tries to switch cameras until the desired facing mode is found.
-     *
-     * @param desiredFrontFacing - The desired front facing value.
-     * @param tries - How many times to try switching.
-     */
-    private void switchCamera(boolean desiredFrontFacing, int tries) {
-        CameraVideoCapturer capturer = (CameraVideoCapturer) videoCapturer;
-
-        capturer.switchCamera(new CameraVideoCapturer.CameraSwitchHandler() {
-            @Override
-            public void onCameraSwitchDone(boolean b) {
-                if (b != desiredFrontFacing) {
-                    int newTries = tries-1;
-                    if (newTries > 0) {
-                        switchCamera(desiredFrontFacing, newTries);
-                    }
-                } else {
-                    isFrontFacing = desiredFrontFacing;
-                }
-            }
+        boolean capturing = this.capturing;
+        if (capturing && !stopCapture()) {
+            newVideoCapturer.dispose();
+            switchHandler.onCameraSwitchError("Failed to stop the capturer");
+            return;
+        }
+        videoCapturer.dispose();
+
+        newVideoCapturer.initialize(
+            surfaceTextureHelper,
+            applicationContext,
+            capturerObserver);
+        videoCapturer = newVideoCapturer;
+        isFrontFacing = Boolean.TRUE.equals(camera.frontFacing);
+        deviceName = camera.name;
+        // The target camera may support different formats.
+        captureFormat
+            = constraints.selectFormat(cameraInfoCache.getFormats(camera));
+        if (capturing) {
+            startCapture();
+        }
 
-            @Override
-            public void onCameraSwitchError(String s) {
-                Log.e(TAG, "Error switching camera: " + s);
-            }
-        });
+        Log.d(TAG, "Switched to camera " + camera.name
+            + ", capture format " + captureFormat);
+        switchHandler.onCameraSwitchDone(isFrontFacing);
     }
 
     /**
@@ -163,23 +352,19 @@ public class VideoCaptureController {
      * {@code deviceId} constraint
      */
     private VideoCapturer createVideoCapturer(String deviceId, String facingMode) {
-        String[] deviceNames = cameraEnumerator.getDeviceNames();
+        List<CameraInfoCache.CameraInfo> cameras = cameraInfoCache.getCameras();
         List<String> failedDevices = new ArrayList<>();
 
         // If deviceId is specified, then it takes precedence over facingMode.
         if (deviceId != null) {
-            for (String name : deviceNames) {
-                if (name.equals(deviceId)) {
+            for (CameraInfoCache.CameraInfo camera : cameras) {
+                if (camera.name.equals(deviceId)) {
                     VideoCapturer videoCapturer
-                        = cameraEnumerator.createCapturer(name, cameraEventsHandler);
-                    String message = "Create user-specified camera " + name;
+                        = createVideoCapturer(camera, "user-specified camera");
                     if (videoCapturer != null) {
-                        Log.d(TAG, message + " succeeded");
-                        this.isFrontFacing = cameraEnumerator.isFrontFacing(name);
                         return videoCapturer;
                     } else {
-                        Log.d(TAG, message + " failed");
-                        failedDevices.add(name);
+                        failedDevices.add(camera.name);
                         break; // fallback to facingMode
                     }
                 }
@@ -189,49 +374,36 @@ public class VideoCaptureController {
         // Otherwise, use facingMode (defaulting to front/user facing).
         final boolean isFrontFacing
             = facingMode == null || !facingMode.equals("environment");
-        for (String name : deviceNames) {
-            if (failedDevices.contains(name)) {
+        for (CameraInfoCache.CameraInfo camera : cameras) {
+            if (failedDevices.contains(camera.name)) {
                 continue;
             }
-            try {
-                // This can throw an exception when using the Camera 1 API.
-                if (cameraEnumerator.isFrontFacing(name) != isFrontFacing) {
-                    continue;
-                }
-            } catch (Exception e) {
-                Log.e(
-                    TAG,
-                    "Failed to check the facing mode of camera " + name,
-                    e);
-                failedDevices.add(name);
+            // The facing mode of the camera could not be determined.
+            if (camera.frontFacing == null) {
+                failedDevices.add(camera.name);
+                continue;
+            }
+            if (camera.frontFacing != isFrontFacing) {
                 continue;
             }
             VideoCapturer videoCapturer
-                = cameraEnumerator.createCapturer(name, cameraEventsHandler);
-            String message = "Create camera " + name;
+                = createVideoCapturer(camera, "camera");
             if (videoCapturer != null) {
-                Log.d(TAG, message + " succeeded");
-                this.isFrontFacing = cameraEnumerator.isFrontFacing(name);
                 return videoCapturer;
             } else {
-                Log.d(TAG, message + " failed");
-                failedDevices.add(name);
+                failedDevices.add(camera.name);
             }
         }
 
         // Fallback to any available camera.
-        for (String name : deviceNames) {
-            if (!failedDevices.contains(name)) {
+        for (CameraInfoCache.CameraInfo camera : cameras) {
+            if (!failedDevices.contains(camera.name)) {
                 VideoCapturer videoCapturer
-                    = cameraEnumerator.createCapturer(name, cameraEventsHandler);
-                String message = "Create fallback camera " + name;
+                    = createVideoCapturer(camera, "fallback camera");
                 if (videoCapturer != null) {
-                    Log.d(TAG, message + " succeeded");
-                    this.isFrontFacing = cameraEnumerator.isFrontFacing(name);
                     return videoCapturer;
                 } else {
-                    Log.d(TAG, message + " failed");
-                    failedDevices.add(name);
+                    failedDevices.add(camera.name);
                     // fallback to the next device.
                 }
             }
@@ -241,4 +413,31 @@ public class VideoCaptureController {
 
         return null;
     }
+
+    /**
+     * Constructs a new {@code VideoCapturer} instance for a specific camera.
+     *
+     * @param camera the camera to capture from
+     * @param description the description of the camera to log
+     * @return the new {@code VideoCapturer} or {@code null} if it could not
+     * be created
+     */
+    private VideoCapturer createVideoCapturer(
+            CameraInfoCache.CameraInfo camera,
+            String description) {
+        VideoCapturer videoCapturer
+            = cameraInfoCache.getCameraEnumerator().createCapturer(
+                camera.name, cameraEventsHandler);
+        String message = "Create " + description + " " + camera.name;
+        if (videoCapturer != null) {
+            this.isFrontFacing = Boolean.TRUE.equals(camera.frontFacing);
+            this.deviceName = camera.name;
+            this.captureFormat
+                = constraints.selectFormat(cameraInfoCache.getFormats(camera));
+            Log.d(TAG, message + " succeeded, capture format " + captureFormat);
+        } else {
+            Log.d(TAG, message + " failed");
+        }
+        return videoCapturer;
+    }
 }
@@ -0,0 +1,227 @@
+package com.oney.WebRTCModule;
+
+import android.util.Log;
+
+import com.facebook.react.bridge.ReadableMap;
+
+import java.util.List;
+
+import org.webrtc.CameraEnumerationAndroid.CaptureFormat;
+
+/**
+ * The (normalized) width, height and frame rate constraints of a local video
+ * track: the ideal values along with the optional {@code min}/{@code max}
+ * bounds (an {@code exact} value is normalized into equal bounds) and the
+ * selection of the {@link CaptureFormat} of a camera which satisfies them
+ * best.
+ * <p>
+ * The selection follows the "fitness distance" of the W3C Media Capture and
+ * Streams specification: formats outside the bounds are not eligible and the
+ * eligible ones are ranked by their relative distance to the ideal values.
+ * Because the format is captured as it is, the camera does not have to be
+ * asked for a size it does not support (and which would be cropped/scaled
+ * later on).
+ */
+class VideoConstraints {
+    private static final String TAG = WebRTCModule.TAG;
+
+    final int width;
+    final int height;
+    final int frameRate;
+
+    /**
+     * The bounds of the width, height and frame rate. Zero means no bound.
+     */
+    final int minWidth;
+    final int maxWidth;
+    final int minHeight;
+    final int maxHeight;
+    final int minFrameRate;
+    final int maxFrameRate;
+
+    VideoConstraints(ReadableMap constraints) {
+        this(constraints, null);
+    }
+
+    /**
+     * Initializes new constraints which replace specific ones (e.g. of
+     * {@code applyConstraints}).
+     *
+     * @param constraints the (normalized) constraints
+     * @param fallback the constraints from which the missing ideal values
+     * are inherited or {@code null} if the ideal values are required. A
+     * missing width or height is derived from the other one in the aspect
+     * ratio of {@code fallback} (rather than inherited as it is, which would
+     * change the aspect ratio and possibly the orientation).
+     */
+    VideoConstraints(ReadableMap constraints, VideoConstraints fallback) {
+        int width = getInt(constraints, "width", 0);
+        int height = getInt(constraints, "height", 0);
+
+        if (fallback != null) {
+            if (width <= 0 && height <= 0) {
+                width = fallback.width;
+                height = fallback.height;
+            } else if (height <= 0) {
+                height
+                    = fallback.width > 0
+                        ? (int) Math.round(
+                            width * fallback.height / (double) fallback.width)
+                        : fallback.height;
+            } else if (width <= 0) {
+                width
+                    = fallback.height > 0
+                        ? (int) Math.round(
+                            height * fallback.width / (double) fallback.height)
+                        : fallback.width;
+            }
+        }
+        this.width = width;
+        this.height = height;
+        frameRate
+            = getInt(
+                constraints,
+                "frameRate",
+                fallback == null ? 0 : fallback.frameRate);
+
+        minWidth = getInt(constraints, "minWidth", 0);
+        maxWidth = getInt(constraints, "maxWidth", 0);
+        minHeight = getInt(constraints, "minHeight", 0);
+        maxHeight = getInt(constraints, "maxHeight", 0);
+        minFrameRate = getInt(constraints, "minFrameRate", 0);
+        maxFrameRate = getInt(constraints, "maxFrameRate", 0);
+    }
+
+    private static int getInt(ReadableMap map, String key, int fallback) {
+        return map.hasKey(key) && !map.isNull(key) ? map.getInt(key) : fallback;
+    }
+
+    /**
+     * The relative distance of an actual value from an ideal one as defined
+     * by the fitness distance algorithm.
+     */
+    private static double distance(int actual, int ideal) {
+        if (actual == ideal) {
+            return 0;
+        }
+        return Math.abs(actual - ideal)
+            / (double) Math.max(Math.abs(actual), Math.abs(ideal));
+    }
+
+    private static boolean inBounds(int value, int min, int max) {
+        return (min <= 0 || value >= min) && (max <= 0 || value <= max);
+    }
+
+    /**
+     * Selects the size and frame rate at which to capture from a camera
+     * which supports specific formats.
+     *
+     * @param formats the formats supported by the camera. If empty (i.e.
+     * unknown), the ideal values are selected.
+     * @return the selected size along with the selected frame rate as a
+     * fixed {@link CaptureFormat.FramerateRange} (in the units of the latter
+     * i.e. frames per second multiplied by 1000)
+     */
+    CaptureFormat selectFormat(List<CaptureFormat> formats) {
+        CaptureFormat format = selectFormat(formats, true);
+
+        if (format == null) {
+            // Rather than failing getUserMedia (with an OverconstrainedError)
+            // capture at the best of what the camera has.
+            Log.w(TAG, "No capture format satisfies " + this);
+            format = selectFormat(formats, false);
+        }
+        if (format == null) {
+            format
+                = new CaptureFormat(
+                    width, height, frameRate * 1000, frameRate * 1000);
+        }
+        return format;
+    }
+
+    private CaptureFormat selectFormat(
+            List<CaptureFormat> formats,
+            boolean bounded) {
+        // The formats of the cameras are landscape and the frames are rotated
+        // afterwards so portrait constraints are matched against the
+        // formats rotated to portrait.
+        boolean portrait = isPortrait();
+        CaptureFormat best = null;
+        int bestFrameRate = 0;
+        double bestDistance = Double.MAX_VALUE;
+
+        for (CaptureFormat format : formats) {
+            int formatWidth = portrait ? format.height : format.width;
+            int formatHeight = portrait ? format.width : format.height;
+            int formatMaxFrameRate = format.framerate.max / 1000;
+            if (formatMaxFrameRate <= 0) {
+                // Unknown.
+                formatMaxFrameRate = Math.max(this.frameRate, minFrameRate);
+            }
+
+            // Capture at the ideal frame rate if the format supports it and
+            // the bounds allow it. The capturer then picks the (most stable)
+            // fps range of the camera which covers it.
+            int frameRate = Math.min(this.frameRate, formatMaxFrameRate);
+            if (bounded) {
+                if (maxFrameRate > 0) {
+                    frameRate = Math.min(frameRate, maxFrameRate);
+                }
+                if (minFrameRate > 0) {
+                    frameRate = Math.max(frameRate, minFrameRate);
+                }
+
+                if (!inBounds(formatWidth, minWidth, maxWidth)
+                        || !inBounds(formatHeight, minHeight, maxHeight)
+                        || frameRate > formatMaxFrameRate) {
+                    continue;
+                }
+            }
+
+            double distance
+                = distance(formatWidth, width)
+                    + distance(formatHeight, height)
+                    + distance(frameRate, this.frameRate);
+
+            // Among equally fit formats, prefer the smaller ones (which are
+            // cheaper to capture, encode and render).
+            if (best == null
+                    || distance < bestDistance
+                    || (distance == bestDistance
+                        && format.width * format.height
+                            < best.width * best.height)) {
+                best = format;
+                bestDistance = distance;
+                bestFrameRate = frameRate;
+            }
+        }
+
+        if (best == null) {
+            return null;
+        }
+        return new CaptureFormat(
+            best.width,
+            best.height,
+            bestFrameRate * 1000,
+            bestFrameRate * 1000);
+    }
+
+    /**
+     * Whether the constraints are for a portrait video i.e. the width and
+     * height of the selected formats are to be swapped when they are
+     * reported.
+     */
+    boolean isPortrait() {
+        return height > width;
+    }
+
+    @Override
+    public String toString() {
+        return "VideoConstraints{width=" + width
+            + " [" + minWidth + ", " + maxWidth + "]"
+            + ", height=" + height
+            + " [" + minHeight + ", " + maxHeight + "]"
+            + ", frameRate=" + frameRate
+            + " [" + minFrameRate + ", " + maxFrameRate + "]}";
+    }
+}
@@ -0,0 +1,140 @@
+package com.oney.WebRTCModule;
+
+import com.facebook.react.bridge.WritableMap;
+
+import org.webrtc.VideoFrame;
+
+/**
+ * Receive-side telemetry of a video track collected from the frames delivered
+ * to a sink: frame rate, inter-frame interval and its jitter, freezes,
+ * resolution/rotation changes and the type of the frame buffers.
+ * <p>
+ * {@link #onFrame(VideoFrame)} is the only writer and is invoked on the thread
+ * which delivers the frames of the track. The values are published through
+ * volatile fields so they may be read on any thread without locking. A reader
+ * may observe the values of two consecutive frames mixed which is fine for
+ * telemetry.
+ */
+class VideoFrameStats {
+    /**
+     * The minimum by which an inter-frame interval has to exceed the average
+     * interval in order to count as a freeze. Together with the factor of 3
+     * in {@link #isFreeze} follows the definition of <tt>freezeCount</tt> in
+     * the WebRTC Statistics API.
+     */
+    private static final long FREEZE_MIN_EXCESS_NS = 150 * 1000000L;
+
+    /**
+     * The time after the last frame from which on the frame rate is reported
+     * as zero.
+     */
+    private static final long STALE_NS = 1000 * 1000000L;
+
+    /**
+     * The gain of the exponentially weighted moving averages of the
+     * inter-frame interval and its jitter (as in RFC 3550).
+     */
+    private static final double GAIN = 1.0 / 16;
+
+    private volatile long frameCount;
+    private volatile long lastFrameTimeNs;
+    private volatile double avgIntervalNs;
+    private volatile double intervalJitterNs;
+    private volatile long freezeCount;
+    private volatile long totalFreezesDurationNs;
+    private volatile int width;
+    private volatile int height;
+    private volatile int rotation;
+    private volatile long resolutionChanges;
+    private volatile long rotationChanges;
+    private volatile boolean textureBuffer;
+
+    long getFrameCount() {
+        return frameCount;
+    }
+
+    void onFrame(VideoFrame frame) {
+        final long now = System.nanoTime();
+        final long count = frameCount;
+
+        if (count > 0) {
+            long interval = now - lastFrameTimeNs;
+            double avg = avgIntervalNs;
+
+            if (count == 1) {
+                avgIntervalNs = interval;
+            } else if (isFreeze(interval, avg)) {
+                // Freezes are not part of the regular cadence of the track so
+                // they are kept out of the averages.
+                freezeCount++;
+                totalFreezesDurationNs += interval;
+            } else {
+                intervalJitterNs
+                    += (Math.abs(interval - avg) - intervalJitterNs) * GAIN;
+                avgIntervalNs = avg + (interval - avg) * GAIN;
+            }
+        }
+        lastFrameTimeNs = now;
+
+        VideoFrame.Buffer buffer = frame.getBuffer();
+        int w = buffer.getWidth();
+        int h = buffer.getHeight();
+        int r = frame.getRotation();
+        if (count > 0) {
+            if (w != width || h != height) {
+                resolutionChanges++;
+            }
+            if (r != rotation) {
+                rotationChanges++;
+            }
+        }
+        width = w;
+        height = h;
+        rotation = r;
+        textureBuffer = buffer instanceof VideoFrame.TextureBuffer;
+
+        frameCount = count + 1;
+    }
+
+    /**
+     * Writes the telemetry into a specific <tt>WritableMap</tt>. Durations
+     * are in milliseconds.
+     */
+    void write(WritableMap params) {
+        final long now = System.nanoTime();
+        final long count = frameCount;
+        final long sinceLastFrame = now - lastFrameTimeNs;
+        final double avg = avgIntervalNs;
+
+        params.putDouble("framesReceived", count);
+        params.putDouble(
+            "framesPerSecond",
+            count < 2 || avg <= 0 || sinceLastFrame > STALE_NS
+                ? 0
+                : 1e9 / avg);
+        params.putDouble("interFrameIntervalMs", avg / 1e6);
+        params.putDouble("interFrameJitterMs", intervalJitterNs / 1e6);
+        params.putDouble("freezeCount", freezeCount);
+        params.putDouble("totalFreezesDurationMs", totalFreezesDurationNs / 1e6);
+        // A freeze only counts once it is over (i.e. the next frame has
+        // arrived); report the ongoing one too.
+        params.putBoolean(
+            "frozen",
+            count > 1 && isFreeze(sinceLastFrame, avg));
+        params.putDouble(
+            "msSinceLastFrame",
+            count == 0 ? -1 : sinceLastFrame / 1e6);
+        params.putInt("width", width);
+        params.putInt("height", height);
+        params.putInt("rotation", rotation);
+        params.putDouble("resolutionChanges", resolutionChanges);
+        params.putDouble("rotationChanges", rotationChanges);
+        params.putString(
+            "bufferType",
+            count == 0 ? null : (textureBuffer ? "texture" : "i420"));
+    }
+
+    private static boolean isFreeze(long intervalNs, double avgIntervalNs) {
+        return intervalNs > Math.max(3 * avgIntervalNs, avgIntervalNs + FREEZE_MIN_EXCESS_NS);
+    }
+}
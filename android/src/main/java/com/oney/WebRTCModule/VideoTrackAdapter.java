@@ -1,5 +1,7 @@
 package com.oney.WebRTCModule;
 
+import android.os.SystemClock;
+import android.support.annotation.Nullable;
 import android.util.*;
 
 import org.webrtc.VideoFrame;
@@ -7,10 +9,14 @@ import org.webrtc.VideoSink;
 import org.webrtc.VideoTrack;
 
 import com.facebook.react.bridge.Arguments;
+import com.facebook.react.bridge.WritableArray;
 import com.facebook.react.bridge.WritableMap;
 
 import java.util.*;
-import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
 
 /**
  * Implements mute/unmute events for remote video tracks.
@@ -22,9 +28,30 @@ public class VideoTrackAdapter {
     static final long INITIAL_MUTE_DELAY = 3000;
     static final long MUTE_DELAY = 1500;
 
-    private Map<String, TrackMuteUnmuteImpl> muteImplMap = new HashMap<>();
+    /**
+     * The period of the timer which checks the tracks of all adapters for
+     * mute/unmute. Finer than {@link #MUTE_DELAY} so that every track is
+     * checked close to its own schedule.
+     */
+    static final long TICK_PERIOD = 250;
+
+    /**
+     * The tracks (of all adapters of all PeerConnections) which are checked
+     * for mute/unmute. Guarded by {@code timerLock}.
+     */
+    private static final Set<TrackMuteUnmuteImpl> activeTracks = new HashSet<>();
+
+    /**
+     * The timer shared by all adapters. Started when the first track is added
+     * and shut down when the last one is removed. Guarded by
+     * {@code timerLock}.
+     */
+    private static ScheduledExecutorService timer;
+
+    private static final Object timerLock = new Object();
 
-    private Timer timer = new Timer("VideoTrackMutedTimer");
+    private final Map<String, TrackMuteUnmuteImpl> muteImplMap
+        = new ConcurrentHashMap<>();
 
     private final int peerConnectionId;
 
@@ -43,7 +70,7 @@ public class VideoTrackAdapter {
             Log.d(TAG, "Created adapter for " + trackId);
             muteImplMap.put(trackId, onMuteImpl);
             videoTrack.addSink(onMuteImpl);
-            onMuteImpl.start();
+            startChecking(onMuteImpl);
         } else {
             Log.w(
                 TAG, "Attempted to add adapter twice for track ID: " + trackId);
@@ -55,73 +82,214 @@ public class VideoTrackAdapter {
         TrackMuteUnmuteImpl onMuteImpl = muteImplMap.remove(trackId);
         if (onMuteImpl != null) {
             videoTrack.removeSink(onMuteImpl);
-            onMuteImpl.dispose();
+            stopChecking(onMuteImpl);
             Log.d(TAG, "Deleted adapter for " + trackId);
         } else {
             Log.w(TAG, "removeAdapter - no adapter for " + trackId);
         }
     }
 
+    /**
+     * Gets the frame telemetry of a specific track of this adapter.
+     *
+     * @param trackId the ID of the track
+     * @return the telemetry (see {@link VideoFrameStats#write}) or
+     * {@code null} if this adapter does not have the track
+     */
+    @Nullable
+    WritableMap getFrameStats(String trackId) {
+        TrackMuteUnmuteImpl onMuteImpl = muteImplMap.get(trackId);
+        return onMuteImpl == null ? null : onMuteImpl.createFrameStatsParams();
+    }
+
+    /**
+     * Sets the interval at which the frame telemetry of a specific track of
+     * this adapter is reported in <tt>mediaStreamTrackFrameStats</tt> events.
+     *
+     * @param trackId the ID of the track
+     * @param intervalMs the interval in milliseconds. Zero or less stops the
+     * events.
+     * @return {@code true} if this adapter has the track; otherwise,
+     * {@code false}
+     */
+    boolean setFrameStatsInterval(String trackId, long intervalMs) {
+        TrackMuteUnmuteImpl onMuteImpl = muteImplMap.get(trackId);
+        if (onMuteImpl == null) {
+            return false;
+        }
+        onMuteImpl.frameStatsIntervalMs = Math.max(0, intervalMs);
+        return true;
+    }
+
+    private static void startChecking(TrackMuteUnmuteImpl track) {
+        track.nextCheckTime = SystemClock.elapsedRealtime() + INITIAL_MUTE_DELAY;
+        synchronized (timerLock) {
+            activeTracks.add(track);
+            if (timer == null) {
+                timer
+                    = Executors.newSingleThreadScheduledExecutor(
+                        r -> new Thread(r, "VideoTrackMutedTimer"));
+                timer.scheduleAtFixedRate(
+                    VideoTrackAdapter::checkTracks,
+                    TICK_PERIOD,
+                    TICK_PERIOD,
+                    TimeUnit.MILLISECONDS);
+            }
+        }
+    }
+
+    private static void stopChecking(TrackMuteUnmuteImpl track) {
+        track.disposed = true;
+        synchronized (timerLock) {
+            activeTracks.remove(track);
+            if (activeTracks.isEmpty() && timer != null) {
+                timer.shutdown();
+                timer = null;
+            }
+        }
+    }
+
+    /**
+     * Checks all tracks which are due for mute/unmute and reports the frame
+     * telemetry of the tracks which are due for it in a single pass. Invoked
+     * by {@link #timer} every {@link #TICK_PERIOD} milliseconds.
+     */
+    private static void checkTracks() {
+        TrackMuteUnmuteImpl[] tracks;
+        synchronized (timerLock) {
+            tracks = activeTracks.toArray(new TrackMuteUnmuteImpl[activeTracks.size()]);
+        }
+
+        long now = SystemClock.elapsedRealtime();
+        Map<WebRTCModule, List<TrackMuteUnmuteImpl>> frameStatsDue = null;
+        for (TrackMuteUnmuteImpl track : tracks) {
+            if (now >= track.nextCheckTime) {
+                // Relative to now rather than to the previous check so that
+                // a stalled timer does not cause back-to-back checks (which
+                // would see no frames in between and report a false mute).
+                track.nextCheckTime = now + MUTE_DELAY;
+                track.check();
+            }
+
+            long frameStatsIntervalMs = track.frameStatsIntervalMs;
+            if (frameStatsIntervalMs > 0
+                    && now >= track.nextFrameStatsTime) {
+                track.nextFrameStatsTime = now + frameStatsIntervalMs;
+                if (frameStatsDue == null) {
+                    frameStatsDue = new HashMap<>();
+                }
+                WebRTCModule module = track.getWebRTCModule();
+                List<TrackMuteUnmuteImpl> due = frameStatsDue.get(module);
+                if (due == null) {
+                    due = new ArrayList<>();
+                    frameStatsDue.put(module, due);
+                }
+                due.add(track);
+            }
+        }
+
+        if (frameStatsDue != null) {
+            for (Map.Entry<WebRTCModule, List<TrackMuteUnmuteImpl>> e
+                    : frameStatsDue.entrySet()) {
+                emitFrameStatsEvent(e.getKey(), e.getValue());
+            }
+        }
+    }
+
+    /**
+     * Reports the frame telemetry of multiple tracks in a single
+     * <tt>mediaStreamTrackFrameStats</tt> event.
+     */
+    private static void emitFrameStatsEvent(
+            WebRTCModule webRTCModule,
+            List<TrackMuteUnmuteImpl> tracks) {
+        webRTCModule.sendEvent("mediaStreamTrackFrameStats", () -> {
+            WritableArray stats = Arguments.createArray();
+            for (TrackMuteUnmuteImpl track : tracks) {
+                if (!track.disposed) {
+                    stats.pushMap(track.createFrameStatsParams());
+                }
+            }
+            WritableMap params = Arguments.createMap();
+            params.putArray("stats", stats);
+            return params;
+        });
+    }
+
     /**
      * Implements 'mute'/'unmute' events for remote video tracks through
      * the {@link VideoSink} interface.
      */
     private class TrackMuteUnmuteImpl implements VideoSink {
-        private TimerTask emitMuteTask;
         private volatile boolean disposed;
-        private AtomicInteger frameCounter;
-        private boolean mutedState;
+        private final VideoFrameStats frameStats = new VideoFrameStats();
+        private long lastFrameNumber;
+        private volatile boolean mutedState;
         private final String streamReactTag;
         private final String trackId;
 
+        /**
+         * The time (in {@link SystemClock#elapsedRealtime()} milliseconds) at
+         * which the track is to be checked next. Accessed on the timer thread
+         * only (once the track has been added to it).
+         */
+        long nextCheckTime;
+
+        /**
+         * The interval at which the frame telemetry of the track is reported
+         * in events. Zero means never.
+         */
+        volatile long frameStatsIntervalMs;
+
+        /**
+         * The time (in {@link SystemClock#elapsedRealtime()} milliseconds) at
+         * which the frame telemetry is to be reported next. Accessed on the
+         * timer thread only.
+         */
+        long nextFrameStatsTime;
+
         TrackMuteUnmuteImpl(String streamReactTag, String trackId) {
             this.streamReactTag = streamReactTag;
             this.trackId = trackId;
-            this.frameCounter = new AtomicInteger();
         }
 
         @Override
         public void onFrame(VideoFrame frame) {
-            frameCounter.addAndGet(1);
+            frameStats.onFrame(frame);
         }
 
-        private void start() {
-            if (disposed) {
-                return;
-            }
-
-            synchronized (this) {
-                if (emitMuteTask != null) {
-                    emitMuteTask.cancel();
-                }
-                emitMuteTask = new TimerTask() {
-                    private int lastFrameNumber = frameCounter.get();
-
-                    @Override
-                    public void run() {
-                        if (disposed) {
-                            return;
-                        }
-                        boolean isMuted = lastFrameNumber == frameCounter.get();
-                        if (isMuted != mutedState) {
-                            mutedState = isMuted;
-                            emitMuteEvent(isMuted);
-                        }
-
-                        lastFrameNumber = frameCounter.get();
-                    }
-                };
-                timer.schedule(emitMuteTask, INITIAL_MUTE_DELAY, MUTE_DELAY);
-            }
+        WebRTCModule getWebRTCModule() {
+            return webRTCModule;
         }
 
-        private void emitMuteEvent(boolean muted) {
+        WritableMap createFrameStatsParams() {
             WritableMap params = Arguments.createMap();
             params.putInt("peerConnectionId", peerConnectionId);
             params.putString("streamReactTag", streamReactTag);
             params.putString("trackId", trackId);
-            params.putBoolean("muted", muted);
+            params.putBoolean("muted", mutedState);
+            frameStats.write(params);
+            return params;
+        }
 
+        /**
+         * Fires a mute/unmute event if frames have stopped/resumed since the
+         * previous check. Invoked on the timer thread.
+         */
+        void check() {
+            if (disposed) {
+                return;
+            }
+            long frameNumber = frameStats.getFrameCount();
+            boolean isMuted = lastFrameNumber == frameNumber;
+            if (isMuted != mutedState) {
+                mutedState = isMuted;
+                emitMuteEvent(isMuted);
+            }
+            lastFrameNumber = frameNumber;
+        }
+
+        private void emitMuteEvent(boolean muted) {
             Log.d(TAG,
                 (muted ? "Mute" : "Unmute" )
                     + " event pcId: " + peerConnectionId
@@ -129,17 +297,14 @@ public class VideoTrackAdapter {
                     + " trackId: " + trackId);
 
             VideoTrackAdapter.this.webRTCModule.sendEvent(
-                "mediaStreamTrackMuteChanged", params);
-        }
-
-        void dispose() {
-            disposed = true;
-            synchronized (this) {
-                if (emitMuteTask != null) {
-                    emitMuteTask.cancel();
-                    emitMuteTask = null;
-                }
-            }
+                "mediaStreamTrackMuteChanged", () -> {
+                    WritableMap params = Arguments.createMap();
+                    params.putInt("peerConnectionId", peerConnectionId);
+                    params.putString("streamReactTag", streamReactTag);
+                    params.putString("trackId", trackId);
+                    params.putBoolean("muted", muted);
+                    return params;
+                });
         }
     }
 }
@@ -0,0 +1,732 @@
+package com.oney.WebRTCModule;
+
+import android.content.Context;
+import android.graphics.Matrix;
+import android.graphics.Point;
+import android.opengl.GLES20;
+import android.os.Handler;
+import android.os.HandlerThread;
+import android.support.v4.view.ViewCompat;
+import android.util.Log;
+import android.view.SurfaceHolder;
+import android.view.SurfaceView;
+
+import com.facebook.react.bridge.ReactContext;
+import com.facebook.react.bridge.ReadableArray;
+import com.facebook.react.bridge.ReadableMap;
+
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import org.webrtc.EglBase;
+import org.webrtc.GlRectDrawer;
+import org.webrtc.GlTextureFrameBuffer;
+import org.webrtc.MediaStream;
+import org.webrtc.MediaStreamTrack;
+import org.webrtc.RendererCommon;
+import org.webrtc.RendererCommon.ScalingType;
+import org.webrtc.VideoFrame;
+import org.webrtc.VideoFrameDrawer;
+import org.webrtc.VideoSink;
+import org.webrtc.VideoTrack;
+
+/**
+ * Renders the first {@link VideoTrack}s of multiple {@link MediaStream}s into
+ * the tiles of a single {@link SurfaceView} i.e. with a single render thread,
+ * EGL context and EGL surface regardless of the number of tiles (as opposed to
+ * one of each per {@link WebRTCView}).
+ * <p>
+ * Every frame is drawn (scaled in the fashion of the CSS property
+ * {@code object-fit} and mirrored as requested) into a texture of its tile
+ * and released right away because decoders and capturers reuse a limited
+ * number of buffers. The textures of all tiles are then composited onto the
+ * surface. The renders requested by the frames which arrive while a render is
+ * pending are coalesced.
+ */
+public class WebRTCGridView extends SurfaceView implements SurfaceHolder.Callback {
+    private static final String TAG = WebRTCModule.TAG;
+
+    /**
+     * The texture matrix with which the textures of the tiles are composited
+     * onto the surface.
+     */
+    private static final float[] IDENTITY_MATRIX = {
+        1, 0, 0, 0,
+        0, 1, 0, 0,
+        0, 0, 1, 0,
+        0, 0, 0, 1
+    };
+
+    /**
+     * The tiles, in the order of the <tt>tiles</tt> prop. Replaced (rather
+     * than modified) on the UI thread and read on the render thread.
+     */
+    private volatile Tile[] tiles = new Tile[0];
+
+    /**
+     * The render thread which is running while this view is attached to a
+     * window. Assigned on the UI thread.
+     */
+    private HandlerThread renderThread;
+
+    /**
+     * The {@code Handler} of {@link #renderThread}. Guarded by
+     * {@code handlerLock} because the frames are delivered on other threads.
+     */
+    private Handler renderHandler;
+
+    private final Object handlerLock = new Object();
+
+    /**
+     * Whether a render has been posted to {@link #renderHandler} and has not
+     * started yet.
+     */
+    private final AtomicBoolean renderPending = new AtomicBoolean();
+
+    private final Runnable renderRunnable = this::render;
+
+    /**
+     * The GL state. Accessed on the render thread only.
+     */
+    private EglBase eglBase;
+    private GlRectDrawer drawer;
+    private VideoFrameDrawer frameDrawer;
+    private final Matrix drawMatrix = new Matrix();
+
+    /**
+     * The {@link WebRTCModule} which owns the rendered streams. Looked up on
+     * first use.
+     */
+    private WebRTCModule webRTCModule;
+
+    public WebRTCGridView(Context context) {
+        super(context);
+
+        getHolder().addCallback(this);
+    }
+
+    private WebRTCModule getWebRTCModule() {
+        if (webRTCModule == null) {
+            ReactContext reactContext = (ReactContext) getContext();
+            webRTCModule = reactContext.getNativeModule(WebRTCModule.class);
+        }
+        return webRTCModule;
+    }
+
+    @Override
+    protected void onAttachedToWindow() {
+        try {
+            startRenderThread();
+            for (Tile tile : tiles) {
+                tile.tryAddSink();
+            }
+        } finally {
+            super.onAttachedToWindow();
+        }
+    }
+
+    @Override
+    protected void onDetachedFromWindow() {
+        try {
+            for (Tile tile : tiles) {
+                tile.removeSink();
+            }
+            stopRenderThread();
+        } finally {
+            super.onDetachedFromWindow();
+        }
+    }
+
+    /**
+     * Sets the tiles to render. Each element describes a tile: the
+     * <tt>streamURL</tt> of the stream whose first video track is rendered,
+     * the rectangle of the tile (<tt>x</tt>, <tt>y</tt>, <tt>width</tt> and
+     * <tt>height</tt> as fractions of the size of this view),
+     * <tt>objectFit</tt> and <tt>mirror</tt> (as on {@link WebRTCView}).
+     * Later tiles are drawn over earlier ones.
+     */
+    void setTiles(ReadableArray array) {
+        List<Tile> oldTiles = new ArrayList<>();
+        for (Tile tile : this.tiles) {
+            oldTiles.add(tile);
+        }
+
+        int size = array == null ? 0 : array.size();
+        Tile[] newTiles = new Tile[size];
+
+        for (int i = 0; i < size; i++) {
+            ReadableMap map = array.getMap(i);
+            String streamURL
+                = map.hasKey("streamURL") && !map.isNull("streamURL")
+                    ? map.getString("streamURL")
+                    : null;
+            Tile tile = null;
+
+            // Keep the tiles which render the same streams so that their
+            // tracks and textures survive layout changes.
+            for (Iterator<Tile> it = oldTiles.iterator(); it.hasNext();) {
+                Tile oldTile = it.next();
+                if (streamURL != null && streamURL.equals(oldTile.streamURL)) {
+                    it.remove();
+                    tile = oldTile;
+                    break;
+                }
+            }
+            if (tile == null) {
+                tile = new Tile(streamURL);
+            }
+
+            tile.x = getFraction(map, "x", 0);
+            tile.y = getFraction(map, "y", 0);
+            tile.width = getFraction(map, "width", 1);
+            tile.height = getFraction(map, "height", 1);
+            tile.scalingType
+                = map.hasKey("objectFit") && "cover".equals(map.getString("objectFit"))
+                    ? ScalingType.SCALE_ASPECT_FILL
+                    : ScalingType.SCALE_ASPECT_FIT;
+            tile.mirror = map.hasKey("mirror") && map.getBoolean("mirror");
+            // The texture has to be redrawn in the new layout.
+            tile.layoutChanged = true;
+
+            newTiles[i] = tile;
+        }
+
+        this.tiles = newTiles;
+
+        for (Tile tile : oldTiles) {
+            tile.setVideoTrack(null);
+            postToRenderThread(tile::releaseTexture);
+        }
+        for (Tile tile : newTiles) {
+            if (tile.videoTrack == null) {
+                tile.setVideoTrack(getVideoTrackForStreamURL(tile.streamURL));
+            }
+        }
+        requestRender();
+    }
+
+    private static float getFraction(ReadableMap map, String key, float defaultValue) {
+        if (map.hasKey(key) && !map.isNull(key)) {
+            return Math.max(0, Math.min(1, (float) map.getDouble(key)));
+        }
+        return defaultValue;
+    }
+
+    private VideoTrack getVideoTrackForStreamURL(String streamURL) {
+        VideoTrack videoTrack = null;
+
+        if (streamURL != null) {
+            MediaStream stream
+                = getWebRTCModule().getStreamForReactTag(streamURL);
+
+            if (stream != null && !stream.videoTracks.isEmpty()) {
+                videoTrack = stream.videoTracks.get(0);
+            }
+        }
+
+        return videoTrack;
+    }
+
+    private void startRenderThread() {
+        if (renderThread != null) {
+            return;
+        }
+
+        EglBase.Context sharedContext = EglUtils.getRootEglBaseContext();
+
+        if (sharedContext == null) {
+            Log.e(TAG, "Failed to render VideoTracks!");
+            return;
+        }
+
+        renderThread = new HandlerThread("RTCGridView");
+        renderThread.start();
+        synchronized (handlerLock) {
+            renderHandler = new Handler(renderThread.getLooper());
+            renderHandler.post(() -> {
+                eglBase = EglBase.create(sharedContext, EglBase.CONFIG_PLAIN);
+                drawer = new GlRectDrawer();
+                frameDrawer = new VideoFrameDrawer();
+            });
+        }
+    }
+
+    private void stopRenderThread() {
+        if (renderThread == null) {
+            return;
+        }
+
+        // Invoked before the surface is destroyed (which then finds no render
+        // thread to wait for) so wait for the EGL surface to be released here
+        // lest a render in progress draws into a dead surface.
+        CountDownLatch latch = new CountDownLatch(1);
+        Tile[] tiles = this.tiles;
+
+        synchronized (handlerLock) {
+            renderHandler.post(() -> {
+                releaseSurface(tiles);
+                drawer.release();
+                drawer = null;
+                frameDrawer.release();
+                frameDrawer = null;
+                eglBase.release();
+                eglBase = null;
+                latch.countDown();
+            });
+            renderHandler = null;
+        }
+        renderThread.quitSafely();
+        renderThread = null;
+        try {
+            latch.await();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    private void postToRenderThread(Runnable runnable) {
+        synchronized (handlerLock) {
+            if (renderHandler != null) {
+                renderHandler.post(runnable);
+            }
+        }
+    }
+
+    private void requestRender() {
+        if (renderPending.compareAndSet(false, true)) {
+            synchronized (handlerLock) {
+                if (renderHandler == null) {
+                    renderPending.set(false);
+                } else {
+                    renderHandler.post(renderRunnable);
+                }
+            }
+        }
+    }
+
+    @Override
+    public void surfaceCreated(SurfaceHolder holder) {
+        postToRenderThread(() -> {
+            if (eglBase != null && !eglBase.hasSurface()) {
+                eglBase.createSurface(holder.getSurface());
+                eglBase.makeCurrent();
+            }
+        });
+        requestRender();
+    }
+
+    @Override
+    public void surfaceChanged(SurfaceHolder holder, int format, int width, int height) {
+        // The tiles are laid out in the new size of the surface.
+        for (Tile tile : tiles) {
+            tile.layoutChanged = true;
+        }
+        requestRender();
+    }
+
+    @Override
+    public void surfaceDestroyed(SurfaceHolder holder) {
+        // The surface must not be used once this method has returned.
+        CountDownLatch latch = new CountDownLatch(1);
+        Tile[] tiles = this.tiles;
+
+        synchronized (handlerLock) {
+            if (renderHandler == null) {
+                return;
+            }
+            renderHandler.post(() -> {
+                releaseSurface(tiles);
+                latch.countDown();
+            });
+        }
+        try {
+            latch.await();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    /**
+     * Releases the EGL surface and the textures of specific tiles (which
+     * cannot be drawn without the former). Invoked on the render thread.
+     */
+    private void releaseSurface(Tile[] tiles) {
+        if (eglBase != null && eglBase.hasSurface()) {
+            for (Tile tile : tiles) {
+                tile.releaseTexture();
+            }
+            eglBase.detachCurrent();
+            eglBase.releaseSurface();
+        }
+    }
+
+    /**
+     * Draws the pending frames into the textures of their tiles and
+     * composites the textures of all tiles onto the surface. Invoked on the
+     * render thread.
+     */
+    private void render() {
+        renderPending.set(false);
+
+        Tile[] tiles = this.tiles;
+
+        if (eglBase == null || !eglBase.hasSurface()) {
+            // Nothing to draw on so drop the frames.
+            for (Tile tile : tiles) {
+                VideoFrame frame = tile.takeFrame();
+                if (frame != null) {
+                    frame.release();
+                }
+            }
+            return;
+        }
+
+        int surfaceWidth = eglBase.surfaceWidth();
+        int surfaceHeight = eglBase.surfaceHeight();
+
+        for (Tile tile : tiles) {
+            VideoFrame frame = tile.takeFrame();
+
+            if (frame != null) {
+                try {
+                    tile.drawFrame(frame, surfaceWidth, surfaceHeight);
+                } finally {
+                    frame.release();
+                }
+            } else if (tile.layoutChanged) {
+                // The track may not deliver a frame anytime soon (e.g. it is
+                // muted or paused) so carry what was drawn over to the new
+                // layout.
+                tile.redrawTexture(surfaceWidth, surfaceHeight);
+            }
+        }
+
+        GLES20.glBindFramebuffer(GLES20.GL_FRAMEBUFFER, 0);
+        GLES20.glViewport(0, 0, surfaceWidth, surfaceHeight);
+        GLES20.glClearColor(0, 0, 0, 1);
+        GLES20.glClear(GLES20.GL_COLOR_BUFFER_BIT);
+        for (Tile tile : tiles) {
+            GlTextureFrameBuffer texture = tile.texture;
+
+            if (texture != null) {
+                drawer.drawRgb(
+                    texture.getTextureId(),
+                    IDENTITY_MATRIX,
+                    texture.getWidth(), texture.getHeight(),
+                    tile.left, surfaceHeight - tile.top - texture.getHeight(),
+                    texture.getWidth(), texture.getHeight());
+            }
+        }
+        eglBase.swapBuffers();
+    }
+
+    /**
+     * A tile of this view i.e. the {@link VideoSink} of the track it renders
+     * along with its layout and texture.
+     */
+    private class Tile implements VideoSink, MediaRegistry.TrackListener {
+        final String streamURL;
+
+        /**
+         * The layout of this tile. Assigned on the UI thread and read on the
+         * render thread.
+         */
+        volatile float x;
+        volatile float y;
+        volatile float width;
+        volatile float height;
+        volatile ScalingType scalingType;
+        volatile boolean mirror;
+        volatile boolean layoutChanged;
+
+        /**
+         * The rendered track. Assigned on the UI thread.
+         */
+        VideoTrack videoTrack;
+
+        /**
+         * Whether {@link #videoTrack} has been released and must not be used
+         * anymore.
+         */
+        private volatile boolean videoTrackReleased;
+
+        private boolean sinkAdded;
+
+        /**
+         * The frame which is yet to be drawn. Guarded by {@code this}.
+         */
+        private VideoFrame pendingFrame;
+
+        /**
+         * The texture into which the frames are drawn and its position on
+         * the surface. Accessed on the render thread only.
+         */
+        GlTextureFrameBuffer texture;
+        int left;
+        int top;
+        private int tileWidth;
+        private int tileHeight;
+
+        /**
+         * The viewport (within {@link #texture}) computed by {@link #fit}.
+         * Accessed on the render thread only.
+         */
+        private int viewportX;
+        private int viewportY;
+        private int viewportWidth;
+        private int viewportHeight;
+
+        Tile(String streamURL) {
+            this.streamURL = streamURL;
+        }
+
+        @Override
+        public void onFrame(VideoFrame frame) {
+            VideoFrame oldFrame;
+
+            frame.retain();
+            synchronized (this) {
+                oldFrame = pendingFrame;
+                pendingFrame = frame;
+            }
+            if (oldFrame != null) {
+                // Not drawn in time; superseded.
+                oldFrame.release();
+            }
+            requestRender();
+        }
+
+        synchronized VideoFrame takeFrame() {
+            VideoFrame frame = pendingFrame;
+            pendingFrame = null;
+            return frame;
+        }
+
+        @Override
+        public void onTrackReleased(MediaStreamTrack track) {
+            if (track == videoTrack) {
+                videoTrackReleased = true;
+            }
+            post(() -> {
+                if (track == videoTrack) {
+                    setVideoTrack(null);
+                    requestRender();
+                }
+            });
+        }
+
+        /**
+         * Sets the track to be rendered by this tile. Invoked on the UI
+         * thread.
+         */
+        void setVideoTrack(VideoTrack videoTrack) {
+            if (this.videoTrack == videoTrack) {
+                return;
+            }
+
+            MediaRegistry registry = getWebRTCModule().registry;
+
+            if (this.videoTrack != null) {
+                removeSink();
+                registry.removeTrackListener(this.videoTrack, this);
+            }
+
+            this.videoTrack = videoTrack;
+            videoTrackReleased = false;
+
+            if (videoTrack != null) {
+                if (registry.addTrackListener(videoTrack, this)) {
+                    tryAddSink();
+                } else {
+                    this.videoTrack = null;
+                }
+            }
+
+            // Whatever was drawn is of the previous track.
+            VideoFrame frame = takeFrame();
+            if (frame != null) {
+                frame.release();
+            }
+            postToRenderThread(this::releaseTexture);
+        }
+
+        void tryAddSink() {
+            if (!sinkAdded
+                    && videoTrack != null
+                    && !videoTrackReleased
+                    && ViewCompat.isAttachedToWindow(WebRTCGridView.this)) {
+                try {
+                    videoTrack.addSink(this);
+                    sinkAdded = true;
+                } catch (Throwable tr) {
+                    // Releasing streams happens in the WebRTC thread, thus we
+                    // might (briefly) hold a reference to a released stream.
+                    Log.e(TAG, "Failed to add grid tile sink", tr);
+                }
+            }
+        }
+
+        void removeSink() {
+            if (sinkAdded) {
+                sinkAdded = false;
+                // It is OK to skip the removeSink invocation for a released
+                // track because VideoTrack#dispose() has performed it already.
+                if (!videoTrackReleased) {
+                    try {
+                        videoTrack.removeSink(this);
+                    } catch (Throwable tr) {
+                        Log.e(TAG, "Failed to remove grid tile sink", tr);
+                    }
+                }
+            }
+        }
+
+        /**
+         * Draws a specific frame into {@link #texture} in the current layout
+         * of this tile. Invoked on the render thread.
+         */
+        void drawFrame(VideoFrame frame, int surfaceWidth, int surfaceHeight) {
+            layoutChanged = false;
+            if (!layout(surfaceWidth, surfaceHeight)) {
+                releaseTexture();
+                return;
+            }
+            if (texture == null) {
+                texture = new GlTextureFrameBuffer(GLES20.GL_RGBA);
+            }
+            texture.setSize(tileWidth, tileHeight);
+
+            fit(frame.getRotatedWidth() / (float) frame.getRotatedHeight(), mirror);
+
+            GLES20.glBindFramebuffer(
+                GLES20.GL_FRAMEBUFFER,
+                texture.getFrameBufferId());
+            GLES20.glViewport(0, 0, tileWidth, tileHeight);
+            GLES20.glClearColor(0, 0, 0, 1);
+            GLES20.glClear(GLES20.GL_COLOR_BUFFER_BIT);
+            frameDrawer.drawFrame(
+                frame,
+                drawer,
+                drawMatrix,
+                viewportX, viewportY, viewportWidth, viewportHeight);
+        }
+
+        /**
+         * Carries what has been drawn into {@link #texture} over to the
+         * current layout of this tile: the texture is scaled (with its aspect
+         * ratio preserved) into a new texture of the new size of this tile.
+         * Invoked on the render thread.
+         */
+        void redrawTexture(int surfaceWidth, int surfaceHeight) {
+            layoutChanged = false;
+            if (texture == null) {
+                return;
+            }
+            if (!layout(surfaceWidth, surfaceHeight)) {
+                releaseTexture();
+                return;
+            }
+
+            GlTextureFrameBuffer oldTexture = texture;
+            int oldWidth = oldTexture.getWidth();
+            int oldHeight = oldTexture.getHeight();
+
+            if (oldWidth == tileWidth && oldHeight == tileHeight) {
+                // Moved only.
+                return;
+            }
+
+            // The texture has been mirrored already.
+            fit(oldWidth / (float) oldHeight, false);
+
+            texture = new GlTextureFrameBuffer(GLES20.GL_RGBA);
+            texture.setSize(tileWidth, tileHeight);
+            GLES20.glBindFramebuffer(
+                GLES20.GL_FRAMEBUFFER,
+                texture.getFrameBufferId());
+            GLES20.glViewport(0, 0, tileWidth, tileHeight);
+            GLES20.glClearColor(0, 0, 0, 1);
+            GLES20.glClear(GLES20.GL_COLOR_BUFFER_BIT);
+            drawer.drawRgb(
+                oldTexture.getTextureId(),
+                RendererCommon.convertMatrixFromAndroidGraphicsMatrix(drawMatrix),
+                oldWidth, oldHeight,
+                viewportX, viewportY, viewportWidth, viewportHeight);
+            oldTexture.release();
+        }
+
+        /**
+         * Computes the position and size of this tile on a surface of a
+         * specific size into {@link #left}, {@link #top}, {@link #tileWidth}
+         * and {@link #tileHeight}.
+         *
+         * @return {@code false} if the tile is empty (i.e. off the surface)
+         */
+        private boolean layout(int surfaceWidth, int surfaceHeight) {
+            left = Math.round(x * surfaceWidth);
+            top = Math.round(y * surfaceHeight);
+            tileWidth
+                = Math.min(Math.round(width * surfaceWidth), surfaceWidth - left);
+            tileHeight
+                = Math.min(Math.round(height * surfaceHeight), surfaceHeight - top);
+
+            return tileWidth > 0 && tileHeight > 0;
+        }
+
+        /**
+         * Computes {@code drawMatrix} and the viewport with which content of
+         * a specific aspect ratio is drawn into the texture of this tile in
+         * the fashion of {@link #scalingType}.
+         */
+        private void fit(float contentAspectRatio, boolean mirrorContent) {
+            float tileAspectRatio = tileWidth / (float) tileHeight;
+            float scaleX = 1;
+            float scaleY = 1;
+
+            viewportX = 0;
+            viewportY = 0;
+            viewportWidth = tileWidth;
+            viewportHeight = tileHeight;
+
+            if (scalingType == ScalingType.SCALE_ASPECT_FILL) {
+                // Crop the content like the cover value of object-fit.
+                if (contentAspectRatio > tileAspectRatio) {
+                    scaleX = tileAspectRatio / contentAspectRatio;
+                } else {
+                    scaleY = contentAspectRatio / tileAspectRatio;
+                }
+            } else {
+                // Letterbox/pillarbox the content like the contain value of
+                // object-fit.
+                Point size
+                    = RendererCommon.getDisplaySize(
+                        ScalingType.SCALE_ASPECT_FIT,
+                        contentAspectRatio,
+                        tileWidth, tileHeight);
+                viewportX = (tileWidth - size.x) / 2;
+                viewportY = (tileHeight - size.y) / 2;
+                viewportWidth = size.x;
+                viewportHeight = size.y;
+            }
+
+            drawMatrix.reset();
+            drawMatrix.preTranslate(0.5f, 0.5f);
+            drawMatrix.preScale(mirrorContent ? -1f : 1f, 1f);
+            drawMatrix.preScale(scaleX, scaleY);
+            drawMatrix.preTranslate(-0.5f, -0.5f);
+        }
+
+        /**
+         * Invoked on the render thread.
+         */
+        void releaseTexture() {
+            if (texture != null) {
+                texture.release();
+                texture = null;
+            }
+        }
+    }
+}
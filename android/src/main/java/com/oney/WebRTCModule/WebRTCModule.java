@@ -2,7 +2,6 @@ package com.oney.WebRTCModule;
 
 import android.support.annotation.Nullable;
 import android.util.Log;
-import android.util.SparseArray;
 
 import com.facebook.react.bridge.Arguments;
 import com.facebook.react.bridge.Callback;
@@ -13,14 +12,16 @@ import com.facebook.react.bridge.ReadableArray;
 import com.facebook.react.bridge.ReadableMap;
 import com.facebook.react.bridge.ReadableMapKeySetIterator;
 import com.facebook.react.bridge.ReadableType;
+import com.facebook.react.bridge.WritableArray;
 import com.facebook.react.bridge.WritableMap;
 import com.facebook.react.module.annotations.ReactModule;
-import com.facebook.react.modules.core.DeviceEventManagerModule;
 
 import java.util.ArrayList;
-import java.util.HashMap;
+import java.util.HashSet;
 import java.util.List;
 import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
 
 import org.webrtc.*;
 import org.webrtc.audio.AudioDeviceModule;
@@ -31,19 +32,53 @@ public class WebRTCModule extends ReactContextBaseJavaModule {
     static final String TAG = WebRTCModule.class.getCanonicalName();
 
     PeerConnectionFactory mFactory;
-    private final SparseArray<PeerConnectionObserver> mPeerConnectionObservers;
+    /**
+     * The {@link PeerConnectionObserver}s mapped by PeerConnection ID.
+     * Concurrent because PeerConnection operations are striped across
+     * multiple executor lanes (see {@link ThreadUtils}).
+     */
+    private final Map<Integer, PeerConnectionObserver> mPeerConnectionObservers;
     final Map<String, MediaStream> localStreams;
 
+    /**
+     * The index of the local and remote streams and tracks of this module.
+     */
+    final MediaRegistry registry = new MediaRegistry();
+
     /**
      * The implementation of {@code getUserMedia} extracted into a separate file
      * in order to reduce complexity and to (somewhat) separate concerns.
      */
     private GetUserMediaImpl getUserMediaImpl;
 
+    /**
+     * Delivers the events of this module to JavaScript in batches.
+     */
+    private final EventDispatcher eventDispatcher;
+
+    /**
+     * The (never {@code null}) options with which this module was created.
+     */
+    final Options options;
+
+    /**
+     * Samples the stats of the PeerConnections which have subscribed to
+     * periodic stats.
+     */
+    private final StatsSampler statsSampler = new StatsSampler(this);
+
     public static class Options {
         private VideoEncoderFactory videoEncoderFactory = null;
         private VideoDecoderFactory videoDecoderFactory = null;
         private AudioDeviceModule audioDeviceModule = null;
+        private long eventBatchingWindowMs = -1;
+        private long dataChannelHighWatermark = 1024 * 1024;
+        private long dataChannelLowWatermark = 256 * 1024;
+        private long dataChannelMaxQueuedBytes = 0;
+        private long cameraPrewarmTtlMs = 10 * 1000;
+        private int rendererPoolSize = SurfaceViewRendererPool.DEFAULT_MAX_SIZE;
+        private long rendererPoolIdleTimeoutMs
+            = SurfaceViewRendererPool.DEFAULT_IDLE_TIMEOUT_MS;
 
         public Options() {}
 
@@ -51,6 +86,100 @@ public class WebRTCModule extends ReactContextBaseJavaModule {
             this.audioDeviceModule = audioDeviceModule;
         }
 
+        /**
+         * Sets the number of milliseconds for which events are collected
+         * before they are delivered to JavaScript as a single batch. Zero
+         * delivers whatever has accumulated as soon as possible and a negative
+         * value (the default) disables batching. Batched events may reach
+         * JavaScript after the callbacks of the operations which caused them
+         * (e.g. {@code signalingstatechange} after the resolution of
+         * {@code setRemoteDescription}).
+         */
+        public void setEventBatchingWindowMs(long eventBatchingWindowMs) {
+            this.eventBatchingWindowMs = eventBatchingWindowMs;
+        }
+
+        /**
+         * Sets the number of bytes which may be buffered by a DataChannel's
+         * SCTP transport before further messages are queued natively (1 MiB by
+         * default). Keeps bulk senders clear of the transport's own limit
+         * above which it closes the DataChannel.
+         */
+        public void setDataChannelHighWatermark(long dataChannelHighWatermark) {
+            this.dataChannelHighWatermark = dataChannelHighWatermark;
+        }
+
+        /**
+         * Sets the number of bytes buffered by a DataChannel's SCTP transport
+         * below which the natively queued messages are handed to it again
+         * (256 KiB by default).
+         */
+        public void setDataChannelLowWatermark(long dataChannelLowWatermark) {
+            this.dataChannelLowWatermark = dataChannelLowWatermark;
+        }
+
+        /**
+         * Sets the maximum number of bytes queued natively per DataChannel.
+         * Messages which would exceed it are rejected. Zero (the default)
+         * means no limit.
+         */
+        public void setDataChannelMaxQueuedBytes(long dataChannelMaxQueuedBytes) {
+            this.dataChannelMaxQueuedBytes = dataChannelMaxQueuedBytes;
+        }
+
+        /**
+         * Sets the number of milliseconds for which a camera capture started
+         * by {@code mediaDevicesPrewarm} is kept running for a matching
+         * {@code getUserMedia} to take it over (10 seconds by default).
+         */
+        public void setCameraPrewarmTtlMs(long cameraPrewarmTtlMs) {
+            this.cameraPrewarmTtlMs = cameraPrewarmTtlMs;
+        }
+
+        long getCameraPrewarmTtlMs() {
+            return cameraPrewarmTtlMs;
+        }
+
+        /**
+         * Sets the maximum number of idle {@code SurfaceViewRenderer}s which
+         * are retained for reuse by the next {@code RTCView}s to be mounted
+         * (4 by default). Zero disables the reuse. Takes effect through
+         * {@link WebRTCModulePackage#WebRTCModulePackage(Options)}.
+         */
+        public void setRendererPoolSize(int rendererPoolSize) {
+            this.rendererPoolSize = rendererPoolSize;
+        }
+
+        /**
+         * Sets the number of milliseconds after which an idle
+         * {@code SurfaceViewRenderer} is released (30 seconds by default).
+         * Takes effect through
+         * {@link WebRTCModulePackage#WebRTCModulePackage(Options)}.
+         */
+        public void setRendererPoolIdleTimeoutMs(long rendererPoolIdleTimeoutMs) {
+            this.rendererPoolIdleTimeoutMs = rendererPoolIdleTimeoutMs;
+        }
+
+        int getRendererPoolSize() {
+            return rendererPoolSize;
+        }
+
+        long getRendererPoolIdleTimeoutMs() {
+            return rendererPoolIdleTimeoutMs;
+        }
+
+        long getDataChannelHighWatermark() {
+            return dataChannelHighWatermark;
+        }
+
+        long getDataChannelLowWatermark() {
+            return dataChannelLowWatermark;
+        }
+
+        long getDataChannelMaxQueuedBytes() {
+            return dataChannelMaxQueuedBytes;
+        }
+
         public void setVideoDecoderFactory(VideoDecoderFactory videoDecoderFactory) {
             this.videoDecoderFactory = videoDecoderFactory;
         }
@@ -67,10 +196,15 @@ public class WebRTCModule extends ReactContextBaseJavaModule {
     public WebRTCModule(ReactApplicationContext reactContext, Options options) {
         super(reactContext);
 
-        mPeerConnectionObservers = new SparseArray<>();
-        localStreams = new HashMap<>();
+        this.options = options == null ? new Options() : options;
+        mPeerConnectionObservers = new ConcurrentHashMap<>();
+        localStreams = new ConcurrentHashMap<>();
+        eventDispatcher
+            = new EventDispatcher(
+                reactContext,
+                this.options.eventBatchingWindowMs);
 
-        ThreadUtils.runOnExecutor(() -> initAsync(options));
+        ThreadUtils.runOnExecutor(() -> initAsync(this.options));
     }
 
     /**
@@ -83,15 +217,9 @@ public class WebRTCModule extends ReactContextBaseJavaModule {
             PeerConnectionFactory.InitializationOptions.builder(reactContext)
                 .createInitializationOptions());
 
-        AudioDeviceModule adm = null;
-        VideoEncoderFactory encoderFactory = null;
-        VideoDecoderFactory decoderFactory = null;
-
-        if (options != null) {
-            adm = options.audioDeviceModule;
-            encoderFactory = options.videoEncoderFactory;
-            decoderFactory = options.videoDecoderFactory;
-        }
+        AudioDeviceModule adm = options.audioDeviceModule;
+        VideoEncoderFactory encoderFactory = options.videoEncoderFactory;
+        VideoDecoderFactory decoderFactory = options.videoDecoderFactory;
 
         if (encoderFactory == null || decoderFactory == null) {
             // Initialize EGL context required for HW acceleration.
@@ -129,15 +257,30 @@ public class WebRTCModule extends ReactContextBaseJavaModule {
         return "WebRTCModule";
     }
 
-    private PeerConnection getPeerConnection(int id) {
+    @Override
+    public void onCatalystInstanceDestroy() {
+        super.onCatalystInstanceDestroy();
+
+        // A reload creates a new module (and dispatcher) so the thread of
+        // this one would be leaked.
+        eventDispatcher.dispose();
+    }
+
+    PeerConnection getPeerConnection(int id) {
         PeerConnectionObserver pco = mPeerConnectionObservers.get(id);
         return (pco == null) ? null : pco.getPeerConnection();
     }
 
     void sendEvent(String eventName, @Nullable WritableMap params) {
-        getReactApplicationContext()
-            .getJSModule(DeviceEventManagerModule.RCTDeviceEventEmitter.class)
-            .emit(eventName, params);
+        eventDispatcher.dispatch(eventName, params);
+    }
+
+    /**
+     * Sends an event to JavaScript, deferring the construction of its
+     * parameters to the thread which delivers it.
+     */
+    void sendEvent(String eventName, EventDispatcher.ParamsFactory paramsFactory) {
+        eventDispatcher.dispatch(eventName, paramsFactory);
     }
 
     private PeerConnection.IceServer createIceServer(String url) {
@@ -387,14 +530,37 @@ public class WebRTCModule extends ReactContextBaseJavaModule {
         PeerConnection.RTCConfiguration rtcConfiguration
             = parseRTCConfiguration(configuration);
 
-        ThreadUtils.runOnExecutor(() ->
-            peerConnectionInitAsync(rtcConfiguration, id));
+        // iceCandidateBatchWindowMs and iceCandidateBatchMaxSize (private api)
+        // control the batching of gathered ICE candidates into
+        // peerConnectionGotICECandidates events.
+        int iceCandidateBatchWindowMs = 0;
+        int iceCandidateBatchMaxSize = 0;
+        if (configuration != null) {
+            if (configuration.hasKey("iceCandidateBatchWindowMs")
+                    && configuration.getType("iceCandidateBatchWindowMs") == ReadableType.Number) {
+                iceCandidateBatchWindowMs = configuration.getInt("iceCandidateBatchWindowMs");
+            }
+            if (configuration.hasKey("iceCandidateBatchMaxSize")
+                    && configuration.getType("iceCandidateBatchMaxSize") == ReadableType.Number) {
+                iceCandidateBatchMaxSize = configuration.getInt("iceCandidateBatchMaxSize");
+            }
+        }
+        final int batchWindowMs = iceCandidateBatchWindowMs;
+        final int batchMaxSize = iceCandidateBatchMaxSize;
+
+        ThreadUtils.runOnExecutorAfterGlobal(id, () ->
+            peerConnectionInitAsync(rtcConfiguration, batchWindowMs, batchMaxSize, id));
     }
 
     private void peerConnectionInitAsync(
             PeerConnection.RTCConfiguration configuration,
+            int iceCandidateBatchWindowMs,
+            int iceCandidateBatchMaxSize,
             int id) {
         PeerConnectionObserver observer = new PeerConnectionObserver(this, id);
+        observer.setIceCandidateBatching(
+            iceCandidateBatchWindowMs,
+            iceCandidateBatchMaxSize);
         PeerConnection peerConnection
             = mFactory.createPeerConnection(configuration, observer);
 
@@ -402,36 +568,16 @@ public class WebRTCModule extends ReactContextBaseJavaModule {
         mPeerConnectionObservers.put(id, observer);
     }
 
+    /**
+     * Gets the local or remote stream with a specific react tag. Safe to call
+     * on any thread.
+     */
     MediaStream getStreamForReactTag(String streamReactTag) {
-        MediaStream stream = localStreams.get(streamReactTag);
-
-        if (stream == null) {
-            for (int i = 0, size = mPeerConnectionObservers.size(); i < size; i++) {
-                PeerConnectionObserver pco = mPeerConnectionObservers.valueAt(i);
-                stream = pco.remoteStreams.get(streamReactTag);
-                if (stream != null) {
-                    break;
-                }
-            }
-        }
-
-        return stream;
+        return registry.getStream(streamReactTag);
     }
 
     private MediaStreamTrack getTrack(String trackId) {
-        MediaStreamTrack track = getLocalTrack(trackId);
-
-        if (track == null) {
-            for (int i = 0, size = mPeerConnectionObservers.size(); i < size; i++) {
-                PeerConnectionObserver pco = mPeerConnectionObservers.valueAt(i);
-                track = pco.remoteTracks.get(trackId);
-                if (track != null) {
-                    break;
-                }
-            }
-        }
-
-        return track;
+        return registry.getTrack(trackId);
     }
 
     MediaStreamTrack getLocalTrack(String trackId) {
@@ -485,6 +631,17 @@ public class WebRTCModule extends ReactContextBaseJavaModule {
             getUserMediaImpl.getUserMedia(constraints, successCallback, errorCallback));
     }
 
+    /**
+     * Opens the camera and starts capturing ahead of a {@code getUserMedia}
+     * with the same constraints (which have been normalized and for which
+     * the permissions have been granted) in order to cut its time to the
+     * first frame.
+     */
+    @ReactMethod
+    public void mediaDevicesPrewarm(ReadableMap constraints) {
+        ThreadUtils.runOnExecutor(() -> getUserMediaImpl.prewarm(constraints));
+    }
+
     @ReactMethod
     public void enumerateDevices(Callback callback) {
         ThreadUtils.runOnExecutor(() ->
@@ -499,6 +656,7 @@ public class WebRTCModule extends ReactContextBaseJavaModule {
     private void mediaStreamCreateAsync(String id) {
         MediaStream mediaStream = mFactory.createLocalMediaStream(id);
         localStreams.put(id, mediaStream);
+        registry.putStream(id, mediaStream);
     }
 
     @ReactMethod
@@ -577,11 +735,12 @@ public class WebRTCModule extends ReactContextBaseJavaModule {
         }
 
         localStreams.remove(id);
+        registry.removeStream(id, stream);
 
         // MediaStream.dispose() may be called without an exception only if
         // it's no longer added to any PeerConnection.
-        for (int i = 0, size = mPeerConnectionObservers.size(); i < size; i++) {
-            mPeerConnectionObservers.valueAt(i).removeStream(stream);
+        for (PeerConnectionObserver pco : mPeerConnectionObservers.values()) {
+            pco.removeStream(stream);
         }
 
         stream.dispose();
@@ -621,18 +780,147 @@ public class WebRTCModule extends ReactContextBaseJavaModule {
         getUserMediaImpl.mediaStreamTrackSetEnabled(id, enabled);
     }
 
+    /**
+     * Clones a local video track. The clone shares the camera capture of the
+     * track and downscales it to its own constraints (if any).
+     *
+     * @param trackId the ID of the local video track to clone
+     * @param cloneId the ID (chosen by JavaScript) of the clone
+     * @param constraints the width, height and frame rate constraints of the
+     * clone
+     * @param callback invoked with {@code true} and the settings of the clone
+     * or with {@code false} and an error message
+     */
     @ReactMethod
-    public void mediaStreamTrackSwitchCamera(String id) {
-        MediaStreamTrack track = getLocalTrack(id);
-        if (track != null) {
-            getUserMediaImpl.switchCamera(id);
-        }
+    public void mediaStreamTrackClone(
+            String trackId,
+            String cloneId,
+            ReadableMap constraints,
+            Callback callback) {
+        ThreadUtils.runOnExecutor(() -> {
+            WritableMap settings
+                = getUserMediaImpl.cloneTrack(trackId, cloneId, constraints);
+
+            if (settings == null) {
+                callback.invoke(false, "Local video track not found");
+            } else {
+                callback.invoke(true, settings);
+            }
+        });
+    }
+
+    /**
+     * Applies width, height and frame rate constraints to a local video track
+     * (preferably without restarting the camera).
+     *
+     * @param trackId the ID of the local video track
+     * @param constraints the (normalized) constraints to apply
+     * @param callback invoked with {@code true} and the new settings of the
+     * track or with {@code false} and an error message
+     */
+    @ReactMethod
+    public void mediaStreamTrackApplyConstraints(
+            String trackId,
+            ReadableMap constraints,
+            Callback callback) {
+        ThreadUtils.runOnExecutor(() -> {
+            WritableMap settings
+                = getUserMediaImpl.applyConstraints(trackId, constraints);
+
+            if (settings == null) {
+                callback.invoke(false, "Local video track not found");
+            } else {
+                callback.invoke(true, settings);
+            }
+        });
+    }
+
+    /**
+     * Switches the camera of a local video track straight to a specific
+     * camera.
+     *
+     * @param id the ID of the local video track
+     * @param target the {@code deviceId} or the {@code facingMode} of the
+     * camera to switch to. If neither, the facing is toggled.
+     * @param callback invoked with {@code true} and the settings of the track
+     * along with the latency of the switch ({@code latencyMs}) or with
+     * {@code false} and an error message
+     */
+    @ReactMethod
+    public void mediaStreamTrackSwitchCamera(
+            String id,
+            ReadableMap target,
+            Callback callback) {
+        ThreadUtils.runOnExecutor(() ->
+            getUserMediaImpl.switchCamera(
+                id,
+                ReactBridgeUtil.getMapStrValue(target, "deviceId"),
+                ReactBridgeUtil.getMapStrValue(target, "facingMode"),
+                callback));
+    }
+
+    /**
+     * Gets the receive-side frame telemetry of a remote video track (see
+     * {@link VideoFrameStats}).
+     *
+     * @param trackId the ID of the remote video track
+     * @param cb invoked with <tt>true</tt> and the telemetry or with
+     * <tt>false</tt> and an error message
+     */
+    @ReactMethod
+    public void mediaStreamTrackGetFrameStats(String trackId, Callback cb) {
+        ThreadUtils.runOnExecutor(() -> {
+            PeerConnectionObserver pco = getRemoteTrackObserver(trackId);
+            WritableMap stats
+                = pco == null
+                    ? null
+                    : pco.getVideoTrackAdapters().getFrameStats(trackId);
+            if (stats != null) {
+                cb.invoke(true, stats);
+            } else {
+                cb.invoke(false, "Track not found");
+            }
+        });
+    }
+
+    /**
+     * Sets the interval at which the frame telemetry of a remote video track
+     * is reported in <tt>mediaStreamTrackFrameStats</tt> events. The events
+     * are throttled to the period of the mute/unmute checks of
+     * {@link VideoTrackAdapter}.
+     *
+     * @param trackId the ID of the remote video track
+     * @param intervalMs the interval in milliseconds. Zero stops the events.
+     */
+    @ReactMethod
+    public void mediaStreamTrackSetFrameStatsInterval(
+            String trackId,
+            double intervalMs) {
+        ThreadUtils.runOnExecutor(() -> {
+            PeerConnectionObserver pco = getRemoteTrackObserver(trackId);
+            if (pco == null
+                    || !pco.getVideoTrackAdapters()
+                        .setFrameStatsInterval(trackId, (long) intervalMs)) {
+                Log.d(TAG, "mediaStreamTrackSetFrameStatsInterval() track not found");
+            }
+        });
+    }
+
+    /**
+     * Gets the {@link PeerConnectionObserver} through which a specific remote
+     * track is received.
+     */
+    private PeerConnectionObserver getRemoteTrackObserver(String trackId) {
+        Integer owner = registry.getTrackOwner(trackId);
+        return owner == null || owner == MediaRegistry.LOCAL
+            ? null
+            : mPeerConnectionObservers.get(owner);
     }
 
     @ReactMethod
     public void peerConnectionSetConfiguration(ReadableMap configuration,
                                                int id) {
-        ThreadUtils.runOnExecutor(() ->
+        ThreadUtils.runOnExecutor(id, () ->
             peerConnectionSetConfigurationAsync(configuration, id));
     }
 
@@ -648,7 +936,7 @@ public class WebRTCModule extends ReactContextBaseJavaModule {
 
     @ReactMethod
     public void peerConnectionAddStream(String streamId, int id) {
-        ThreadUtils.runOnExecutor(() ->
+        ThreadUtils.runOnExecutorAfterGlobal(id, () ->
             peerConnectionAddStreamAsync(streamId, id));
     }
 
@@ -666,7 +954,7 @@ public class WebRTCModule extends ReactContextBaseJavaModule {
 
     @ReactMethod
     public void peerConnectionRemoveStream(String streamId, int id) {
-        ThreadUtils.runOnExecutor(() ->
+        ThreadUtils.runOnExecutorAfterGlobal(id, () ->
             peerConnectionRemoveStreamAsync(streamId, id));
     }
 
@@ -686,7 +974,7 @@ public class WebRTCModule extends ReactContextBaseJavaModule {
     public void peerConnectionCreateOffer(int id,
                                           ReadableMap options,
                                           Callback callback) {
-        ThreadUtils.runOnExecutor(() ->
+        ThreadUtils.runOnExecutor(id, () ->
             peerConnectionCreateOfferAsync(id, options, callback));
     }
 
@@ -726,7 +1014,7 @@ public class WebRTCModule extends ReactContextBaseJavaModule {
     public void peerConnectionCreateAnswer(int id,
                                            ReadableMap options,
                                            Callback callback) {
-        ThreadUtils.runOnExecutor(() ->
+        ThreadUtils.runOnExecutor(id, () ->
             peerConnectionCreateAnswerAsync(id, options, callback));
     }
 
@@ -766,7 +1054,7 @@ public class WebRTCModule extends ReactContextBaseJavaModule {
     public void peerConnectionSetLocalDescription(ReadableMap sdpMap,
                                                   int id,
                                                   Callback callback) {
-        ThreadUtils.runOnExecutor(() ->
+        ThreadUtils.runOnExecutor(id, () ->
             peerConnectionSetLocalDescriptionAsync(sdpMap, id, callback));
     }
 
@@ -812,7 +1100,7 @@ public class WebRTCModule extends ReactContextBaseJavaModule {
     public void peerConnectionSetRemoteDescription(ReadableMap sdpMap,
                                                    int id,
                                                    Callback callback) {
-        ThreadUtils.runOnExecutor(() ->
+        ThreadUtils.runOnExecutor(id, () ->
             peerConnectionSetRemoteDescriptionAsync(sdpMap, id, callback));
     }
 
@@ -858,7 +1146,7 @@ public class WebRTCModule extends ReactContextBaseJavaModule {
     public void peerConnectionAddICECandidate(ReadableMap candidateMap,
                                               int id,
                                               Callback callback) {
-        ThreadUtils.runOnExecutor(() ->
+        ThreadUtils.runOnExecutor(id, () ->
             peerConnectionAddICECandidateAsync(candidateMap, id, callback));
     }
 
@@ -869,12 +1157,7 @@ public class WebRTCModule extends ReactContextBaseJavaModule {
         PeerConnection peerConnection = getPeerConnection(id);
         Log.d(TAG, "peerConnectionAddICECandidate() start");
         if (peerConnection != null) {
-            IceCandidate candidate = new IceCandidate(
-                candidateMap.getString("sdpMid"),
-                candidateMap.getInt("sdpMLineIndex"),
-                candidateMap.getString("candidate")
-            );
-            result = peerConnection.addIceCandidate(candidate);
+            result = peerConnection.addIceCandidate(parseIceCandidate(candidateMap));
         } else {
             Log.d(TAG, "peerConnectionAddICECandidate() peerConnection is null");
         }
@@ -882,9 +1165,60 @@ public class WebRTCModule extends ReactContextBaseJavaModule {
         Log.d(TAG, "peerConnectionAddICECandidate() end");
     }
 
+    /**
+     * Adds multiple remote ICE candidates (e.g. a whole signaling payload) to
+     * a PeerConnection in a single executor task. The callback is invoked once
+     * with an array of booleans which tells, for each candidate in order,
+     * whether it was added.
+     */
+    @ReactMethod
+    public void peerConnectionAddICECandidates(ReadableArray candidates,
+                                               int id,
+                                               Callback callback) {
+        ThreadUtils.runOnExecutor(id, () ->
+            peerConnectionAddICECandidatesAsync(candidates, id, callback));
+    }
+
+    private void peerConnectionAddICECandidatesAsync(ReadableArray candidates,
+                                                     int id,
+                                                     Callback callback) {
+        PeerConnection peerConnection = getPeerConnection(id);
+        WritableArray results = Arguments.createArray();
+        final int size = candidates.size();
+        Log.d(TAG, "peerConnectionAddICECandidates() start (" + size + ")");
+        if (peerConnection == null) {
+            Log.d(TAG, "peerConnectionAddICECandidates() peerConnection is null");
+        }
+        for (int i = 0; i < size; i++) {
+            boolean result = false;
+            if (peerConnection != null) {
+                try {
+                    result
+                        = peerConnection.addIceCandidate(
+                            parseIceCandidate(candidates.getMap(i)));
+                } catch (RuntimeException e) {
+                    // A malformed candidate must not prevent the rest of the
+                    // payload from being applied.
+                    Log.w(TAG, "peerConnectionAddICECandidates() failed to add candidate " + i, e);
+                }
+            }
+            results.pushBoolean(result);
+        }
+        callback.invoke(results);
+        Log.d(TAG, "peerConnectionAddICECandidates() end");
+    }
+
+    private static IceCandidate parseIceCandidate(ReadableMap candidateMap) {
+        return new IceCandidate(
+            candidateMap.getString("sdpMid"),
+            candidateMap.getInt("sdpMLineIndex"),
+            candidateMap.getString("candidate")
+        );
+    }
+
     @ReactMethod
     public void peerConnectionGetStats(String trackId, int id, Callback cb) {
-        ThreadUtils.runOnExecutor(() ->
+        ThreadUtils.runOnExecutor(id, () ->
             peerConnectionGetStatsAsync(trackId, id, cb));
     }
 
@@ -900,9 +1234,33 @@ public class WebRTCModule extends ReactContextBaseJavaModule {
         }
     }
 
+    /**
+     * Gets the stats of a PeerConnection in the format of the WebRTC
+     * Statistics API (as opposed to the legacy format of
+     * {@link #peerConnectionGetStats}). If <tt>trackId</tt> is not empty, only
+     * the stats of the sender or receiver of the track are reported.
+     */
+    @ReactMethod
+    public void peerConnectionGetStatsReport(String trackId, int id, Callback cb) {
+        ThreadUtils.runOnExecutor(id, () ->
+            peerConnectionGetStatsReportAsync(trackId, id, cb));
+    }
+
+    private void peerConnectionGetStatsReportAsync(String trackId,
+                                                   int id,
+                                                   Callback cb) {
+        PeerConnectionObserver pco = mPeerConnectionObservers.get(id);
+        if (pco == null || pco.getPeerConnection() == null) {
+            Log.d(TAG, "peerConnectionGetStatsReport() peerConnection is null");
+            cb.invoke(false, "PeerConnection ID not found");
+        } else {
+            pco.getStatsReport(trackId, cb);
+        }
+    }
+
     @ReactMethod
     public void peerConnectionClose(int id) {
-        ThreadUtils.runOnExecutor(() -> peerConnectionCloseAsync(id));
+        ThreadUtils.runOnExecutor(id, () -> peerConnectionCloseAsync(id));
     }
 
     private void peerConnectionCloseAsync(int id) {
@@ -910,16 +1268,53 @@ public class WebRTCModule extends ReactContextBaseJavaModule {
         if (pco == null || pco.getPeerConnection() == null) {
             Log.d(TAG, "peerConnectionClose() peerConnection is null");
         } else {
+            statsSampler.unsubscribe(id);
             pco.close();
             mPeerConnectionObservers.remove(id);
         }
     }
 
+    /**
+     * Subscribes a PeerConnection to periodic stats which are delivered as
+     * deltas in <tt>peerConnectionStatsSampled</tt> events (see
+     * {@link StatsSampler}).
+     *
+     * @param id the ID of the PeerConnection
+     * @param options <tt>intervalMs</tt> (defaults to 1000) and, optionally,
+     * <tt>types</tt> i.e. the array of the types of the stats to sample
+     */
+    @ReactMethod
+    public void peerConnectionSubscribeStats(int id, ReadableMap options) {
+        long intervalMs = 1000;
+        Set<String> types = null;
+
+        if (options != null) {
+            if (options.hasKey("intervalMs")) {
+                intervalMs = Math.max(1, (long) options.getDouble("intervalMs"));
+            }
+            if (options.hasKey("types")
+                    && options.getType("types") == ReadableType.Array) {
+                ReadableArray typesArray = options.getArray("types");
+                types = new HashSet<>();
+                for (int i = 0, size = typesArray.size(); i < size; i++) {
+                    types.add(typesArray.getString(i));
+                }
+            }
+        }
+
+        statsSampler.subscribe(id, intervalMs, types);
+    }
+
+    @ReactMethod
+    public void peerConnectionUnsubscribeStats(int id) {
+        statsSampler.unsubscribe(id);
+    }
+
     @ReactMethod
     public void createDataChannel(int peerConnectionId,
                                   String label,
                                   ReadableMap config) {
-        ThreadUtils.runOnExecutor(() ->
+        ThreadUtils.runOnExecutor(peerConnectionId, () ->
             createDataChannelAsync(peerConnectionId, label, config));
     }
 
@@ -939,7 +1334,7 @@ public class WebRTCModule extends ReactContextBaseJavaModule {
 
     @ReactMethod
     public void dataChannelClose(int peerConnectionId, int dataChannelId) {
-        ThreadUtils.runOnExecutor(() ->
+        ThreadUtils.runOnExecutor(peerConnectionId, () ->
             dataChannelCloseAsync(peerConnectionId, dataChannelId));
     }
 
@@ -961,7 +1356,7 @@ public class WebRTCModule extends ReactContextBaseJavaModule {
                                 int dataChannelId,
                                 String data,
                                 String type) {
-        ThreadUtils.runOnExecutor(() ->
+        ThreadUtils.runOnExecutor(peerConnectionId, () ->
             dataChannelSendAsync(peerConnectionId, dataChannelId, data, type));
     }
 
@@ -979,4 +1374,38 @@ public class WebRTCModule extends ReactContextBaseJavaModule {
             pco.dataChannelSend(dataChannelId, data, type);
         }
     }
+
+    /**
+     * Sends a burst of messages over a DataChannel in a single executor task.
+     * The callback is invoked once with an array of booleans which tells, for
+     * each message in order, whether it was sent.
+     */
+    @ReactMethod
+    public void dataChannelSendBatch(int peerConnectionId,
+                                     int dataChannelId,
+                                     ReadableArray messages,
+                                     Callback callback) {
+        ThreadUtils.runOnExecutor(peerConnectionId, () ->
+            dataChannelSendBatchAsync(peerConnectionId, dataChannelId, messages, callback));
+    }
+
+    private void dataChannelSendBatchAsync(int peerConnectionId,
+                                           int dataChannelId,
+                                           ReadableArray messages,
+                                           Callback callback) {
+        // Forward to PeerConnectionObserver which deals with DataChannels
+        // because DataChannel is owned by PeerConnection.
+        PeerConnectionObserver pco
+            = mPeerConnectionObservers.get(peerConnectionId);
+        if (pco == null || pco.getPeerConnection() == null) {
+            Log.d(TAG, "dataChannelSendBatch() peerConnection is null");
+            WritableArray results = Arguments.createArray();
+            for (int i = 0, size = messages.size(); i < size; i++) {
+                results.pushBoolean(false);
+            }
+            callback.invoke(results);
+        } else {
+            callback.invoke(pco.dataChannelSendBatch(dataChannelId, messages));
+        }
+    }
 }
@@ -9,11 +9,27 @@ import java.util.Arrays;
 import java.util.List;
 
 public class WebRTCModulePackage implements ReactPackage {
+    private final WebRTCModule.Options options;
+
+    public WebRTCModulePackage() {
+        this(null);
+    }
+
+    /**
+     * Initializes a new package which configures the module and the view
+     * managers it creates with specific options.
+     *
+     * @param options the options or {@code null} for the defaults
+     */
+    public WebRTCModulePackage(WebRTCModule.Options options) {
+        this.options = options == null ? new WebRTCModule.Options() : options;
+    }
+
     @Override
     public List<NativeModule> createNativeModules(
             ReactApplicationContext reactContext) {
         return Arrays.<NativeModule>asList(
-            new WebRTCModule(reactContext)
+            new WebRTCModule(reactContext, options)
         );
     }
 
@@ -21,7 +37,10 @@ public class WebRTCModulePackage implements ReactPackage {
     public List<ViewManager> createViewManagers(
             ReactApplicationContext reactContext) {
         return Arrays.<ViewManager>asList(
-            new RTCVideoViewManager()
+            new RTCVideoViewManager(
+                options.getRendererPoolSize(),
+                options.getRendererPoolIdleTimeoutMs()),
+            new RTCGridViewManager()
         );
     }
 }
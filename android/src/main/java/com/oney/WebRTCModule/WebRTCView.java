@@ -4,11 +4,14 @@ import android.annotation.SuppressLint;
 import android.content.Context;
 import android.graphics.Color;
 import android.graphics.Point;
+import android.graphics.Rect;
 import android.support.v4.view.ViewCompat;
 import android.view.View;
 import android.view.ViewGroup;
+import android.view.ViewTreeObserver;
 import android.util.Log;
 
+import com.facebook.react.bridge.LifecycleEventListener;
 import com.facebook.react.bridge.ReactContext;
 
 import java.lang.reflect.InvocationTargetException;
@@ -16,8 +19,8 @@ import java.lang.reflect.Method;
 import java.util.List;
 import java.util.Objects;
 
-import org.webrtc.EglBase;
 import org.webrtc.MediaStream;
+import org.webrtc.MediaStreamTrack;
 import org.webrtc.RendererCommon;
 import org.webrtc.RendererCommon.RendererEvents;
 import org.webrtc.RendererCommon.ScalingType;
@@ -72,19 +75,19 @@ public class WebRTCView extends ViewGroup {
 
     /**
      * The height of the last video frame rendered by
-     * {@link #surfaceViewRenderer}.
+     * {@link #renderer}.
      */
     private int frameHeight;
 
     /**
      * The rotation (degree) of the last video frame rendered by
-     * {@link #surfaceViewRenderer}.
+     * {@link #renderer}.
      */
     private int frameRotation;
 
     /**
      * The width of the last video frame rendered by
-     * {@link #surfaceViewRenderer}.
+     * {@link #renderer}.
      */
     private int frameWidth;
 
@@ -102,14 +105,22 @@ public class WebRTCView extends ViewGroup {
     private boolean mirror;
 
     /**
-     * Indicates if the {@link SurfaceViewRenderer} is attached to the video
-     * track.
+     * The {@link SurfaceViewRenderer}, if any, which actually renders
+     * {@link #videoTrack} on behalf of this instance. Acquired from
+     * {@link #rendererPool} while this instance is attached to a window and
+     * has a {@code videoTrack}, {@code null} otherwise.
      */
-    private boolean rendererAttached;
+    private SurfaceViewRendererPool.Renderer renderer;
+
+    /**
+     * The pool from which {@link #renderer} is acquired and to which it is
+     * given back.
+     */
+    private final SurfaceViewRendererPool rendererPool;
 
     /**
      * The {@code RendererEvents} which listens to rendering events reported by
-     * {@link #surfaceViewRenderer}.
+     * {@link #renderer}.
      */
     private final RendererEvents rendererEvents
         = new RendererEvents() {
@@ -156,21 +167,118 @@ public class WebRTCView extends ViewGroup {
     private String streamURL;
 
     /**
-     * The {@link View} and {@link VideoSink} implementation which
-     * actually renders {@link #videoTrack} on behalf of this instance.
+     * The {@code VideoTrack}, if any, rendered by this {@code WebRTCView}.
+     * Assigned on the UI thread only.
+     */
+    private volatile VideoTrack videoTrack;
+
+    /**
+     * Whether {@link #videoTrack} has been released (by the
+     * {@link WebRTCModule}) and must not be used anymore. Set on the thread
+     * which releases the track so that it takes effect before the track is
+     * disposed of.
      */
-    private final SurfaceViewRenderer surfaceViewRenderer;
+    private volatile boolean videoTrackReleased;
 
     /**
-     * The {@code VideoTrack}, if any, rendered by this {@code WebRTCView}.
+     * The {@link MediaRegistry.TrackListener} which learns about the release
+     * of {@link #videoTrack} so that the latter does not have to be resolved
+     * again (through the {@link WebRTCModule}) on every use.
+     */
+    private final MediaRegistry.TrackListener videoTrackListener
+        = new MediaRegistry.TrackListener() {
+            @Override
+            public void onTrackReleased(MediaStreamTrack track) {
+                if (track == videoTrack) {
+                    videoTrackReleased = true;
+                }
+                post(() -> onVideoTrackReleased(track));
+            }
+        };
+
+    /**
+     * The {@link WebRTCModule} which owns the streams rendered by this
+     * {@code WebRTCView}. Looked up on first use.
+     */
+    private WebRTCModule webRTCModule;
+
+    /**
+     * The z-order of this {@code WebRTCView} (see {@link #setZOrder(int)}).
+     */
+    private int zOrder;
+
+    /**
+     * The render caps of this {@code WebRTCView} (see
+     * {@link #setMaxFrameRate(float)} and
+     * {@link #setMaxRenderSize(int, int)}).
+     */
+    private float maxFrameRate;
+    private int maxRenderHeight;
+    private int maxRenderWidth;
+
+    /**
+     * Whether this {@code WebRTCView} is (at least partially) visible to the
+     * user. The rendering is paused while it is not. See
+     * {@link #updateVisibility()}.
+     */
+    private boolean visible;
+
+    /**
+     * Whether the host (activity) of this {@code WebRTCView} is resumed.
+     */
+    private boolean hostResumed = true;
+
+    /**
+     * The {@code Rect} into which the visible rectangle of this
+     * {@code WebRTCView} is retrieved. Kept in order to not allocate on every
+     * scroll.
+     */
+    private final Rect visibleRect = new Rect();
+
+    /**
+     * The {@code ViewTreeObserver} with which {@link #visibilityListener} has
+     * been registered (while this {@code WebRTCView} is attached to a window).
      */
-    private VideoTrack videoTrack;
+    private ViewTreeObserver viewTreeObserver;
+
+    /**
+     * Re-evaluates the visibility of this {@code WebRTCView} when it may have
+     * been scrolled or laid out in or out of sight.
+     */
+    private final VisibilityListener visibilityListener
+        = new VisibilityListener();
+
+    /**
+     * Pauses/resumes the rendering along with the host (activity) of this
+     * {@code WebRTCView}.
+     */
+    private final LifecycleEventListener lifecycleEventListener
+        = new LifecycleEventListener() {
+            @Override
+            public void onHostResume() {
+                hostResumed = true;
+                updateVisibility();
+            }
+
+            @Override
+            public void onHostPause() {
+                hostResumed = false;
+                updateVisibility();
+            }
+
+            @Override
+            public void onHostDestroy() {
+            }
+        };
 
     public WebRTCView(Context context) {
+        this(context, new SurfaceViewRendererPool(0, 0));
+    }
+
+    WebRTCView(Context context, SurfaceViewRendererPool rendererPool) {
         super(context);
 
-        surfaceViewRenderer = new SurfaceViewRenderer(context);
-        addView(surfaceViewRenderer);
+        this.rendererPool = rendererPool;
 
         setMirror(false);
         setScalingType(DEFAULT_SCALING_TYPE);
@@ -181,8 +289,10 @@ public class WebRTCView extends ViewGroup {
      * opaque black and the surface part to transparent.
      */
     private void cleanSurfaceViewRenderer() {
-        surfaceViewRenderer.setBackgroundColor(Color.BLACK);
-        surfaceViewRenderer.clearImage();
+        if (renderer != null) {
+            renderer.view.setBackgroundColor(Color.BLACK);
+            renderer.view.clearImage();
+        }
     }
 
     /**
@@ -193,27 +303,26 @@ public class WebRTCView extends ViewGroup {
      * {@code WebRTCView}.
      */
     private VideoTrack getVideoTrack() {
-        VideoTrack videoTrack = this.videoTrack;
-
         // XXX If WebRTCModule#mediaStreamTrackRelease has already been invoked
         // on videoTrack, then it is no longer safe to call methods (e.g.
         // addRenderer, removeRenderer) on videoTrack.
-        if (videoTrack != null
-                && videoTrack != getVideoTrackForStreamURL(this.streamURL)) {
-            videoTrack = null;
-        }
+        return videoTrackReleased ? null : this.videoTrack;
+    }
 
-        return videoTrack;
+    private WebRTCModule getWebRTCModule() {
+        if (webRTCModule == null) {
+            ReactContext reactContext = (ReactContext) getContext();
+            webRTCModule = reactContext.getNativeModule(WebRTCModule.class);
+        }
+        return webRTCModule;
     }
 
     private VideoTrack getVideoTrackForStreamURL(String streamURL) {
         VideoTrack videoTrack = null;
 
         if (streamURL != null) {
-            ReactContext reactContext = (ReactContext) getContext();
-            WebRTCModule module
-                = reactContext.getNativeModule(WebRTCModule.class);
-            MediaStream stream = module.getStreamForReactTag(streamURL);
+            MediaStream stream
+                = getWebRTCModule().getStreamForReactTag(streamURL);
 
             if (stream != null) {
                 List<VideoTrack> videoTracks = stream.videoTracks;
@@ -252,12 +361,19 @@ public class WebRTCView extends ViewGroup {
     @Override
     protected void onAttachedToWindow() {
         try {
+            viewTreeObserver = getViewTreeObserver();
+            viewTreeObserver.addOnScrollChangedListener(visibilityListener);
+            viewTreeObserver.addOnGlobalLayoutListener(visibilityListener);
+            ((ReactContext) getContext())
+                .addLifecycleEventListener(lifecycleEventListener);
+
             // Generally, OpenGL is only necessary while this View is attached
             // to a window so there is no point in having the whole rendering
             // infrastructure hooked up while this View is not attached to a
             // window. Additionally, a memory leak was solved in a similar way
             // on iOS.
             tryAddRendererToVideoTrack();
+            updateVisibility();
         } finally {
             super.onAttachedToWindow();
         }
@@ -272,13 +388,59 @@ public class WebRTCView extends ViewGroup {
             // window. Additionally, a memory leak was solved in a similar way
             // on iOS.
             removeRendererFromVideoTrack();
+
+            if (viewTreeObserver.isAlive()) {
+                viewTreeObserver.removeOnScrollChangedListener(visibilityListener);
+                viewTreeObserver.removeOnGlobalLayoutListener(visibilityListener);
+            }
+            viewTreeObserver = null;
+            ((ReactContext) getContext())
+                .removeLifecycleEventListener(lifecycleEventListener);
+            visible = false;
         } finally {
             super.onDetachedFromWindow();
         }
     }
 
+    @Override
+    protected void onVisibilityChanged(View changedView, int visibility) {
+        super.onVisibilityChanged(changedView, visibility);
+        updateVisibility();
+    }
+
+    @Override
+    protected void onWindowVisibilityChanged(int visibility) {
+        super.onWindowVisibilityChanged(visibility);
+        updateVisibility();
+    }
+
     /**
-     * Callback fired by {@link #surfaceViewRenderer} when the first frame is
+     * Determines whether this {@code WebRTCView} is visible to the user i.e.
+     * its host is resumed, its window is visible, it and its ancestors are
+     * visible and (some of) it is within the visible bounds of its ancestors
+     * (e.g. not scrolled out of sight). Pauses the rendering while it is not
+     * so that frames are not drawn in vain. Being covered by other views is
+     * not detected.
+     */
+    private void updateVisibility() {
+        boolean visible
+            = hostResumed
+                && viewTreeObserver != null
+                && getWindowVisibility() == View.VISIBLE
+                && isShown()
+                && getGlobalVisibleRect(visibleRect);
+
+        if (this.visible != visible) {
+            this.visible = visible;
+            if (renderer != null) {
+                renderer.setPaused(!visible);
+            }
+        }
+    }
+
+
+    /**
+     * Callback fired by {@link #renderer} when the first frame is
      * rendered. Here we will set the background of the view part of the
      * SurfaceView to transparent, so the surface (where video is actually
      * rendered) shines through.
@@ -286,12 +448,25 @@ public class WebRTCView extends ViewGroup {
     private void onFirstFrameRendered() {
         post(() -> {
             Log.d(TAG, "First frame rendered.");
-            surfaceViewRenderer.setBackgroundColor(Color.TRANSPARENT);
+            if (renderer != null) {
+                renderer.view.setBackgroundColor(Color.TRANSPARENT);
+            }
         });
     }
 
     /**
-     * Callback fired by {@link #surfaceViewRenderer} when the resolution or
+     * Invoked on the UI thread after a track this {@code WebRTCView} has been
+     * rendering has been released. Stops rendering it (without touching it).
+     */
+    private void onVideoTrackReleased(MediaStreamTrack track) {
+        if (track == videoTrack) {
+            Log.d(TAG, "Rendered VideoTrack released.");
+            setVideoTrack(null);
+        }
+    }
+
+    /**
+     * Callback fired by {@link #renderer} when the resolution or
      * rotation of the frame it renders has changed.
      *
      * @param videoWidth The new width of the rendered video frame.
@@ -319,13 +494,17 @@ public class WebRTCView extends ViewGroup {
         }
         if (changed) {
             // The onFrameResolutionChanged method call executes on the
-            // surfaceViewRenderer's render Thread.
+            // Thread which delivers the frames of the videoTrack.
             post(requestSurfaceViewRendererLayoutRunnable);
         }
     }
 
     @Override
     protected void onLayout(boolean changed, int l, int t, int r, int b) {
+        if (renderer == null) {
+            return;
+        }
+
         int height = b - t;
         int width = r - l;
 
@@ -346,7 +525,7 @@ public class WebRTCView extends ViewGroup {
 
             switch (scalingType) {
             case SCALE_ASPECT_FILL:
-                // Fill this ViewGroup with surfaceViewRenderer and the latter
+                // Fill this ViewGroup with renderer and the latter
                 // will take care of filling itself with the video similarly to
                 // the cover value the CSS property object-fit.
                 r = width;
@@ -356,7 +535,7 @@ public class WebRTCView extends ViewGroup {
                 break;
             case SCALE_ASPECT_FIT:
             default:
-                // Lay surfaceViewRenderer out inside this ViewGroup in accord
+                // Lay renderer out inside this ViewGroup in accord
                 // with the contain value of the CSS property object-fit.
                 // SurfaceViewRenderer will fill itself with the video similarly
                 // to the cover or contain value of the CSS property object-fit
@@ -382,7 +561,7 @@ public class WebRTCView extends ViewGroup {
                 break;
             }
         }
-        surfaceViewRenderer.layout(l, t, r, b);
+        renderer.view.layout(l, t, r, b);
     }
 
     /**
@@ -390,7 +569,7 @@ public class WebRTCView extends ViewGroup {
      * resources (if rendering is in progress).
      */
     private void removeRendererFromVideoTrack() {
-        if (rendererAttached) {
+        if (renderer != null) {
             // XXX If WebRTCModule#mediaStreamTrackRelease has already been
             // invoked on videoTrack, then it is no longer safe to call methods
             // (e.g. addSink, removeSink) on videoTrack. It is OK to
@@ -400,7 +579,7 @@ public class WebRTCView extends ViewGroup {
 
             if (videoTrack != null) {
                 try {
-                    videoTrack.removeSink(surfaceViewRenderer);
+                    videoTrack.removeSink(renderer);
                 } catch (Throwable tr) {
                     // Releasing streams happens in the WebRTC thread, thus we might (briefly) hold
                     // a reference to a released stream.
@@ -408,11 +587,14 @@ public class WebRTCView extends ViewGroup {
                 }
             }
 
-            surfaceViewRenderer.release();
-            rendererAttached = false;
+            // Give the SurfaceViewRenderer back initialized so that the next
+            // WebRTCView to be attached may reuse it.
+            removeView(renderer.view);
+            rendererPool.recycle(renderer);
+            renderer = null;
 
-            // Since this WebRTCView is no longer rendering anything, make sure
-            // surfaceViewRenderer displays nothing as well.
+            // Since this WebRTCView is no longer rendering anything, forget
+            // the layout of the last frame.
             synchronized (layoutSyncRoot) {
                 frameHeight = 0;
                 frameRotation = 0;
@@ -423,15 +605,17 @@ public class WebRTCView extends ViewGroup {
     }
 
     /**
-     * Request that {@link #surfaceViewRenderer} be laid out (as soon as
+     * Request that {@link #renderer} be laid out (as soon as
      * possible) because layout-related state either of this instance or of
-     * {@code surfaceViewRenderer} has changed.
+     * {@code renderer} has changed.
      */
     @SuppressLint("WrongCall")
     private void requestSurfaceViewRendererLayout() {
-        // Google/WebRTC just call requestLayout() on surfaceViewRenderer when
+        // Google/WebRTC just call requestLayout() on renderer when
         // they change the value of its mirror or surfaceType property.
-        surfaceViewRenderer.requestLayout();
+        if (renderer != null) {
+            renderer.view.requestLayout();
+        }
         // The above is not enough though when the video frame's dimensions or
         // rotation change. The following will suffice.
         if (!invokeIsInLayout()) {
@@ -452,13 +636,44 @@ public class WebRTCView extends ViewGroup {
     public void setMirror(boolean mirror) {
         if (this.mirror != mirror) {
             this.mirror = mirror;
-            surfaceViewRenderer.setMirror(mirror);
+            if (renderer != null) {
+                renderer.view.setMirror(mirror);
+            }
             // SurfaceViewRenderer takes the value of its mirror property into
             // account upon its layout.
             requestSurfaceViewRendererLayout();
         }
     }
 
+    /**
+     * Sets the maximum number of frames per second this {@code WebRTCView}
+     * renders. The frames above it are dropped before they are drawn.
+     *
+     * @param maxFrameRate The maximum frame rate or zero for no limit.
+     */
+    public void setMaxFrameRate(float maxFrameRate) {
+        this.maxFrameRate = maxFrameRate;
+        if (renderer != null) {
+            renderer.setMaxFrameRate(maxFrameRate);
+        }
+    }
+
+    /**
+     * Sets the maximum size (in pixels) of the frames this {@code WebRTCView}
+     * renders. Larger frames are downscaled (preserving their aspect ratio)
+     * before they are drawn.
+     *
+     * @param maxWidth The maximum width or zero for no limit.
+     * @param maxHeight The maximum height or zero for no limit.
+     */
+    public void setMaxRenderSize(int maxWidth, int maxHeight) {
+        maxRenderWidth = maxWidth;
+        maxRenderHeight = maxHeight;
+        if (renderer != null) {
+            renderer.setMaxRenderSize(maxWidth, maxHeight);
+        }
+    }
+
     /**
      * In the fashion of
      * https://www.w3.org/TR/html5/embedded-content-0.html#dom-video-videowidth
@@ -484,7 +699,9 @@ public class WebRTCView extends ViewGroup {
                 return;
             }
             this.scalingType = scalingType;
-            surfaceViewRenderer.setScalingType(scalingType);
+            if (renderer != null) {
+                renderer.view.setScalingType(scalingType);
+            }
         }
         // Both this instance ant its SurfaceViewRenderer take the value of
         // their scalingType properties into account upon their layouts.
@@ -536,6 +753,8 @@ public class WebRTCView extends ViewGroup {
         VideoTrack oldVideoTrack = this.videoTrack;
 
         if (oldVideoTrack != videoTrack) {
+            MediaRegistry registry = getWebRTCModule().registry;
+
             if (oldVideoTrack != null) {
                 if (videoTrack == null) {
                     // If we are not going to render any stream, clean the
@@ -543,9 +762,19 @@ public class WebRTCView extends ViewGroup {
                     cleanSurfaceViewRenderer();
                 }
                 removeRendererFromVideoTrack();
+                registry.removeTrackListener(oldVideoTrack, videoTrackListener);
             }
 
             this.videoTrack = videoTrack;
+            videoTrackReleased = false;
+
+            // Learn about the release of the new videoTrack from now on rather
+            // than validating it on every use. If it has been released
+            // already, do not render it at all.
+            if (videoTrack != null
+                    && !registry.addTrackListener(videoTrack, videoTrackListener)) {
+                this.videoTrack = videoTrack = null;
+            }
 
             if (videoTrack != null) {
                 tryAddRendererToVideoTrack();
@@ -567,15 +796,28 @@ public class WebRTCView extends ViewGroup {
      * @param zOrder The z-order to set on this {@code WebRTCView}.
      */
     public void setZOrder(int zOrder) {
+        this.zOrder = zOrder;
+        if (renderer != null) {
+            applyZOrder(renderer.view);
+        }
+    }
+
+    /**
+     * Applies {@link #zOrder} to a specific {@code SurfaceViewRenderer}.
+     * Resets whatever a previous user of the (pooled) renderer may have set.
+     */
+    private void applyZOrder(SurfaceViewRenderer view) {
         switch (zOrder) {
         case 0:
-            surfaceViewRenderer.setZOrderMediaOverlay(false);
+            view.setZOrderOnTop(false);
+            view.setZOrderMediaOverlay(false);
             break;
         case 1:
-            surfaceViewRenderer.setZOrderMediaOverlay(true);
+            view.setZOrderOnTop(false);
+            view.setZOrderMediaOverlay(true);
             break;
         case 2:
-            surfaceViewRenderer.setZOrderOnTop(true);
+            view.setZOrderOnTop(true);
             break;
         }
     }
@@ -587,35 +829,67 @@ public class WebRTCView extends ViewGroup {
     private void tryAddRendererToVideoTrack() {
         VideoTrack videoTrack;
 
-        if (!rendererAttached
+        if (renderer == null
                 // XXX If WebRTCModule#mediaStreamTrackRelease has already been
                 // invoked on videoTrack, then it is no longer safe to call
                 // methods (e.g. addRenderer, removeRenderer) on videoTrack.
                 && (videoTrack = getVideoTrack()) != null
                 && ViewCompat.isAttachedToWindow(this)) {
-            EglBase.Context sharedContext = EglUtils.getRootEglBaseContext();
+            SurfaceViewRendererPool.Renderer renderer
+                = rendererPool.acquire(getContext(), rendererEvents);
 
-            if (sharedContext == null) {
-                // If SurfaceViewRenderer#init() is invoked, it will throw a
-                // RuntimeException which will very likely kill the application.
+            if (renderer == null) {
                 Log.e(TAG, "Failed to render a VideoTrack!");
                 return;
             }
 
-            surfaceViewRenderer.init(sharedContext, rendererEvents);
+            // The SurfaceViewRenderer may have been used by another
+            // WebRTCView so (re)apply the whole state. The z-order has to be
+            // applied before it is attached to the window.
+            SurfaceViewRenderer view = renderer.view;
+
+            view.setMirror(mirror);
+            synchronized (layoutSyncRoot) {
+                view.setScalingType(scalingType);
+            }
+            applyZOrder(view);
+            view.setBackgroundColor(Color.BLACK);
+            renderer.setMaxFrameRate(maxFrameRate);
+            renderer.setMaxRenderSize(maxRenderWidth, maxRenderHeight);
+            renderer.setPaused(!visible);
+            addView(view);
 
             try {
-                videoTrack.addSink(surfaceViewRenderer);
+                videoTrack.addSink(renderer);
             } catch (Throwable tr) {
                 // Releasing streams happens in the WebRTC thread, thus we might (briefly) hold
                 // a reference to a released stream.
                 Log.e(TAG, "Failed to add renderer", tr);
 
-                surfaceViewRenderer.release();
+                removeView(view);
+                rendererPool.recycle(renderer);
                 return;
             }
 
-            rendererAttached = true;
+            this.renderer = renderer;
+        }
+    }
+
+    /**
+     * Implements the {@code ViewTreeObserver} listeners which re-evaluate the
+     * visibility of this {@code WebRTCView}.
+     */
+    private class VisibilityListener
+        implements ViewTreeObserver.OnGlobalLayoutListener,
+                   ViewTreeObserver.OnScrollChangedListener {
+        @Override
+        public void onGlobalLayout() {
+            updateVisibility();
+        }
+
+        @Override
+        public void onScrollChanged() {
+            updateVisibility();
         }
     }
 }
@@ -0,0 +1,214 @@
+package com.oney.WebRTCModule;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotSame;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assume.assumeTrue;
+
+import java.lang.management.ManagementFactory;
+import java.nio.ByteBuffer;
+import java.nio.charset.Charset;
+import java.util.Arrays;
+
+import org.junit.Test;
+
+/**
+ * Tests that {@link DataChannelMessageConverter} converts exactly the
+ * remaining bytes of the received <tt>ByteBuffer</tt>s and that it reuses its
+ * scratch buffers i.e. that the allocation per message stays flat. The
+ * Base64 encoding itself is left out because <tt>android.util.Base64</tt> is
+ * not available on the host JVM.
+ */
+public class DataChannelMessageConverterTest {
+    private static final Charset UTF_8 = Charset.forName("UTF-8");
+
+    private static final int MESSAGE_COUNT = 10000;
+
+    /**
+     * The number of bytes a message may allocate on top of the resulting
+     * <tt>String</tt> (e.g. the duplicate of the <tt>ByteBuffer</tt>) which
+     * is way below the size of the scratch buffers.
+     */
+    private static final long ALLOCATION_SLACK_PER_MESSAGE = 256;
+
+    /**
+     * Prevents the conversions from being optimized away.
+     */
+    private Object sink;
+
+    private final DataChannelMessageConverter converter
+        = new DataChannelMessageConverter();
+
+    @Test
+    public void decodeTextOfSlicedDirectBuffer() {
+        String text = "h\u00e9llo, w\u00f6rld \ud83d\ude00";
+        ByteBuffer data = directBuffer("prefix", text, "suffix");
+
+        // The message starts at a non-zero offset of the direct memory and
+        // ends before its end.
+        data.position("prefix".length());
+        data.limit(data.capacity() - "suffix".length());
+        ByteBuffer slice = data.slice();
+
+        assertEquals(text, converter.decodeText(slice));
+        assertEquals(0, slice.position());
+        assertEquals(text.getBytes(UTF_8).length, slice.limit());
+
+        // The position and the limit of the original are honoured too.
+        assertEquals(text, converter.decodeText(data));
+        assertEquals("prefix".length(), data.position());
+        assertEquals(data.capacity() - "suffix".length(), data.limit());
+    }
+
+    @Test
+    public void decodeTextReplacesMalformedInput() {
+        ByteBuffer data = ByteBuffer.allocateDirect(3);
+        data.put((byte) 'a').put((byte) 0xff).put((byte) 'b').flip();
+
+        assertEquals("a\ufffdb", converter.decodeText(data));
+    }
+
+    @Test
+    public void copyToScratchOfSlicedDirectBuffer() {
+        ByteBuffer data = directBuffer("prefix", "message", "suffix");
+
+        data.position("prefix".length());
+        data.limit(data.capacity() - "suffix".length());
+        ByteBuffer slice = data.slice();
+
+        byte[] bytes = converter.copyToScratch(slice);
+        assertEquals(
+            "message",
+            new String(bytes, 0, slice.remaining(), UTF_8));
+        assertEquals(0, slice.position());
+        assertEquals("message".length(), slice.limit());
+
+        // A shorter message reuses the same scratch array.
+        ByteBuffer shorter = directBuffer("", "msg", "");
+        assertSame(bytes, converter.copyToScratch(shorter));
+        assertEquals("msg", new String(bytes, 0, 3, UTF_8));
+    }
+
+    @Test
+    public void copyToScratchDoesNotRetainLargeMessages() {
+        byte[] small
+            = converter.copyToScratch(ByteBuffer.allocateDirect(16));
+        ByteBuffer large
+            = ByteBuffer.allocateDirect(
+                DataChannelMessageConverter.MAX_RETAINED_SCRATCH_SIZE + 1);
+
+        byte[] first = converter.copyToScratch(large);
+        assertNotSame(first, converter.copyToScratch(large));
+
+        // Grows the retained scratch array up to the limit only.
+        byte[] grown
+            = converter.copyToScratch(
+                ByteBuffer.allocateDirect(
+                    DataChannelMessageConverter.MAX_RETAINED_SCRATCH_SIZE));
+        assertNotSame(small, grown);
+        assertSame(
+            grown,
+            converter.copyToScratch(ByteBuffer.allocateDirect(16)));
+    }
+
+    @Test
+    public void decodeTextAllocatesOnlyTheString() {
+        com.sun.management.ThreadMXBean threadMXBean = threadMXBean();
+        assumeTrue(threadMXBean != null);
+
+        char[] chars = new char[1000];
+        Arrays.fill(chars, 'x');
+        String text = new String(chars);
+        ByteBuffer data = directBuffer("", text, "");
+
+        // Warm up so that the scratch buffers exist and the code is compiled.
+        for (int i = 0; i < MESSAGE_COUNT; i++) {
+            converter.decodeText(data);
+        }
+
+        // The Strings are all there is to allocate so measure the same number
+        // of them (of the same coder) as the baseline.
+        long baseline = allocatedBytes(threadMXBean, () -> {
+            for (int i = 0; i < MESSAGE_COUNT; i++) {
+                sink(new String(chars));
+            }
+        });
+        long allocated = allocatedBytes(threadMXBean, () -> {
+            for (int i = 0; i < MESSAGE_COUNT; i++) {
+                sink(converter.decodeText(data));
+            }
+        });
+
+        assertTrue(
+            "allocated " + allocated + " bytes, baseline " + baseline,
+            allocated
+                <= baseline + MESSAGE_COUNT * ALLOCATION_SLACK_PER_MESSAGE);
+    }
+
+    @Test
+    public void copyToScratchAllocatesNothingPerMessage() {
+        com.sun.management.ThreadMXBean threadMXBean = threadMXBean();
+        assumeTrue(threadMXBean != null);
+
+        ByteBuffer data = ByteBuffer.allocateDirect(1000);
+
+        for (int i = 0; i < MESSAGE_COUNT; i++) {
+            converter.copyToScratch(data);
+        }
+
+        long allocated = allocatedBytes(threadMXBean, () -> {
+            for (int i = 0; i < MESSAGE_COUNT; i++) {
+                sink(converter.copyToScratch(data));
+            }
+        });
+
+        assertTrue(
+            "allocated " + allocated + " bytes",
+            allocated <= MESSAGE_COUNT * ALLOCATION_SLACK_PER_MESSAGE);
+    }
+
+    private void sink(Object o) {
+        sink = o;
+    }
+
+    private static ByteBuffer directBuffer(
+            String prefix,
+            String message,
+            String suffix) {
+        byte[] bytes = (prefix + message + suffix).getBytes(UTF_8);
+        ByteBuffer data = ByteBuffer.allocateDirect(bytes.length);
+
+        data.put(bytes).flip();
+        return data;
+    }
+
+    /**
+     * Gets the <tt>ThreadMXBean</tt> of the host JVM if it can count the
+     * bytes allocated by a thread; otherwise, <tt>null</tt>.
+     */
+    private static com.sun.management.ThreadMXBean threadMXBean() {
+        java.lang.management.ThreadMXBean threadMXBean
+            = ManagementFactory.getThreadMXBean();
+
+        if (threadMXBean instanceof com.sun.management.ThreadMXBean) {
+            com.sun.management.ThreadMXBean t
+                = (com.sun.management.ThreadMXBean) threadMXBean;
+            if (t.isThreadAllocatedMemorySupported()) {
+                t.setThreadAllocatedMemoryEnabled(true);
+                return t;
+            }
+        }
+        return null;
+    }
+
+    private static long allocatedBytes(
+            com.sun.management.ThreadMXBean threadMXBean,
+            Runnable runnable) {
+        long threadId = Thread.currentThread().getId();
+        long start = threadMXBean.getThreadAllocatedBytes(threadId);
+
+        runnable.run();
+        return threadMXBean.getThreadAllocatedBytes(threadId) - start;
+    }
+}
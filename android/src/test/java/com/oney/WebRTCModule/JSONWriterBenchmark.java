@@ -0,0 +1,140 @@
+package com.oney.WebRTCModule;
+
+import static org.junit.Assert.assertEquals;
+
+import org.junit.Test;
+import org.webrtc.StatsReport;
+
+/**
+ * Compares the serialization of legacy stats reports by
+ * {@link PeerConnectionObserver#statsToJSON} (i.e. {@link JSONWriter}) with
+ * the <tt>StringBuilder</tt> concatenation it replaced. Prints the time per
+ * serialization of each rather than asserting on it because the timings of
+ * a host JVM do not carry over to a device.
+ * <p>
+ * Run with <tt>./gradlew test --tests '*JSONWriterBenchmark'</tt>.
+ */
+public class JSONWriterBenchmark {
+    private static final int VALUES_PER_REPORT = 12;
+
+    private static final int WARMUP_ROUNDS = 5;
+
+    private static final int ROUNDS = 30;
+
+    private static final int ITERATIONS_PER_ROUND = 200;
+
+    /**
+     * Prevents the serializations from being optimized away.
+     */
+    private long sink;
+
+    private final StringBuilder legacyBuilder = new StringBuilder();
+
+    @Test
+    public void statsToJSON() {
+        benchmark(50);
+        benchmark(500);
+    }
+
+    private void benchmark(int reportCount) {
+        StatsReport[] reports = createReports(reportCount);
+
+        // The reports need no escaping so both produce the same output.
+        assertEquals(
+            legacyStatsToJSON(reports),
+            PeerConnectionObserver.statsToJSON(reports));
+
+        for (int i = 0; i < WARMUP_ROUNDS; i++) {
+            measure(reports, true);
+            measure(reports, false);
+        }
+
+        // The best round is the least disturbed by GC and the like.
+        double legacyUs = Double.MAX_VALUE;
+        double writerUs = Double.MAX_VALUE;
+        for (int i = 0; i < ROUNDS; i++) {
+            legacyUs = Math.min(legacyUs, measure(reports, true));
+            writerUs = Math.min(writerUs, measure(reports, false));
+        }
+
+        System.out.printf(
+            "statsToJSON %d reports: legacy %.1f us, JSONWriter %.1f us (%d)%n",
+            reportCount,
+            legacyUs,
+            writerUs,
+            sink % 10);
+    }
+
+    /**
+     * Gets the time (in microseconds) of a serialization.
+     */
+    private double measure(StatsReport[] reports, boolean legacy) {
+        long startTime = System.nanoTime();
+
+        for (int i = 0; i < ITERATIONS_PER_ROUND; i++) {
+            String json
+                = legacy
+                    ? legacyStatsToJSON(reports)
+                    : PeerConnectionObserver.statsToJSON(reports);
+            sink += json.length();
+        }
+
+        return (System.nanoTime() - startTime) / (ITERATIONS_PER_ROUND * 1000.0);
+    }
+
+    private static StatsReport[] createReports(int count) {
+        StatsReport[] reports = new StatsReport[count];
+
+        for (int i = 0; i < count; i++) {
+            StatsReport.Value[] values = new StatsReport.Value[VALUES_PER_REPORT];
+            for (int j = 0; j < values.length; j++) {
+                values[j]
+                    = new StatsReport.Value(
+                        "googValueName" + j,
+                        String.valueOf(i * 1000 + j * 37));
+            }
+            // A timestamp which both write the same (i.e. not in the
+            // exponential notation of StringBuilder#append(double)).
+            reports[i]
+                = new StatsReport(
+                    "ssrc_" + i + "_send",
+                    "ssrc",
+                    i + 0.5,
+                    values);
+        }
+        return reports;
+    }
+
+    /**
+     * The serialization which {@code statsToJSON} used to do: a reused
+     * <tt>StringBuilder</tt> and no escaping.
+     */
+    private String legacyStatsToJSON(StatsReport[] reports) {
+        StringBuilder s = legacyBuilder;
+
+        s.setLength(0);
+        s.append('[');
+        for (int i = 0; i < reports.length; ++i) {
+            StatsReport report = reports[i];
+            if (i != 0) {
+                s.append(',');
+            }
+            s.append("{\"id\":\"").append(report.id)
+                .append("\",\"type\":\"").append(report.type)
+                .append("\",\"timestamp\":").append(report.timestamp)
+                .append(",\"values\":[");
+            StatsReport.Value[] values = report.values;
+            for (int j = 0; j < values.length; ++j) {
+                StatsReport.Value v = values[j];
+                if (j != 0) {
+                    s.append(',');
+                }
+                s.append("{\"").append(v.name).append("\":\"").append(v.value)
+                    .append("\"}");
+            }
+            s.append("]}");
+        }
+        s.append(']');
+        return s.toString();
+    }
+}
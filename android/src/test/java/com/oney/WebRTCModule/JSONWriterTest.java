@@ -0,0 +1,176 @@
+package com.oney.WebRTCModule;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+import org.junit.Test;
+
+/**
+ * Tests the escaping of strings, the writing of numbers and the separators
+ * which {@link JSONWriter} produces (including after
+ * {@link JSONWriter#truncate(int, boolean)}).
+ */
+public class JSONWriterTest {
+    private final JSONWriter writer = new JSONWriter();
+
+    @Test
+    public void escapesQuotesAndBackslashes() {
+        writer.value("say \"hi\" C:\\temp\\");
+
+        assertEquals("\"say \\\"hi\\\" C:\\\\temp\\\\\"", writer.toString());
+    }
+
+    @Test
+    public void escapesControlCharacters() {
+        StringBuilder value = new StringBuilder();
+        for (char c = 0; c < 0x20; c++) {
+            value.append(c);
+        }
+        value.append(' ');
+
+        writer.value(value.toString());
+
+        assertEquals(
+            "\""
+                + "\\u0000\\u0001\\u0002\\u0003\\u0004\\u0005\\u0006\\u0007"
+                + "\\b\\t\\n\\u000b\\f\\r\\u000e\\u000f"
+                + "\\u0010\\u0011\\u0012\\u0013\\u0014\\u0015\\u0016\\u0017"
+                + "\\u0018\\u0019\\u001a\\u001b\\u001c\\u001d\\u001e\\u001f"
+                + " \"",
+            writer.toString());
+    }
+
+    @Test
+    public void escapesAfterAnUnescapedPrefix() {
+        // The fast path copies up to the first character to escape and the
+        // slow path takes over from there.
+        writer.value("abc\n\"def\"\u0001ghi");
+
+        assertEquals("\"abc\\n\\\"def\\\"\\u0001ghi\"", writer.toString());
+    }
+
+    @Test
+    public void writesNonBmpCharactersAsIs() {
+        // JSON is UTF-16 here so surrogate pairs need no escaping.
+        String emoji = "\ud83d\ude00";
+
+        writer.beginObject()
+            .name("k" + emoji)
+            .value(emoji + "\u00e9\u4e2d")
+            .endObject();
+
+        assertEquals(
+            "{\"k" + emoji + "\":\"" + emoji + "\u00e9\u4e2d\"}",
+            writer.toString());
+    }
+
+    @Test
+    public void escapesNames() {
+        writer.beginObject().name("a\"b\t").value(1).endObject();
+
+        assertEquals("{\"a\\\"b\\t\":1}", writer.toString());
+    }
+
+    @Test
+    public void writesNaNAndInfinityAsNull() {
+        writer.beginArray()
+            .value(Double.NaN)
+            .value(Double.POSITIVE_INFINITY)
+            .value(Double.NEGATIVE_INFINITY)
+            .value((Object) Float.NaN)
+            .value(1.5)
+            .value(2.0)
+            .value(-0.25)
+            .endArray();
+
+        assertEquals("[null,null,null,null,1.5,2,-0.25]", writer.toString());
+    }
+
+    @Test
+    public void writesLongs() {
+        writer.beginArray()
+            .value(0)
+            .value(-42)
+            .value(Long.MAX_VALUE)
+            .value(Long.MIN_VALUE)
+            .endArray();
+
+        assertEquals(
+            "[0,-42," + Long.MAX_VALUE + "," + Long.MIN_VALUE + "]",
+            writer.toString());
+    }
+
+    @Test
+    public void writesObjects() {
+        Map<String, Object> map = new LinkedHashMap<>();
+        map.put("s", "x");
+        map.put("b", true);
+        map.put("n", null);
+        map.put("a", new int[] { 1, 2 });
+
+        writer.value((Object) map);
+
+        assertEquals(
+            "{\"s\":\"x\",\"b\":true,\"n\":null,\"a\":[1,2]}",
+            writer.toString());
+    }
+
+    @Test
+    public void truncateDropsAnElementAfterOthers() {
+        writer.beginArray();
+        writer.value(1);
+        writeDropped();
+        writer.value(3);
+        writer.endArray();
+
+        assertEquals("[1,3]", writer.toString());
+    }
+
+    @Test
+    public void truncateDropsTheFirstElement() {
+        writer.beginArray();
+        writeDropped();
+        writer.value(2);
+        writeDropped();
+        writer.endArray();
+
+        assertEquals("[2]", writer.toString());
+    }
+
+    @Test
+    public void truncateDropsTheOnlyElement() {
+        writer.beginObject().name("stats").beginArray();
+        writeDropped();
+        writer.endArray().name("next").value(true).endObject();
+
+        assertEquals("{\"stats\":[],\"next\":true}", writer.toString());
+    }
+
+    @Test
+    public void releaseResets() {
+        writer.beginArray().value("x");
+        writer.release();
+        writer.value(1);
+
+        assertEquals("1", writer.toString());
+    }
+
+    /**
+     * Writes (and takes back) an object as an element of the current array
+     * like {@code StatsSampler} does for stats which have not changed.
+     */
+    private void writeDropped() {
+        int start = writer.length();
+        boolean needsComma = writer.needsComma();
+
+        writer.beginObject().name("id").value("dropped").endObject();
+        assertTrue(writer.needsComma());
+        writer.truncate(start, needsComma);
+
+        assertEquals(start, writer.length());
+        assertEquals(needsComma, writer.needsComma());
+    }
+}
@@ -4,6 +4,7 @@ import RTCPeerConnection from './RTCPeerConnection';
 import RTCIceCandidate from './RTCIceCandidate';
 import RTCSessionDescription from './RTCSessionDescription';
 import RTCView from './RTCView';
+import RTCGridView from './RTCGridView';
 import MediaStream from './MediaStream';
 import MediaStreamTrack from './MediaStreamTrack';
 import mediaDevices from './MediaDevices';
@@ -14,6 +15,7 @@ export {
   RTCIceCandidate,
   RTCSessionDescription,
   RTCView,
+  RTCGridView,
   MediaStream,
   MediaStreamTrack,
   mediaDevices,